@@ -0,0 +1,115 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.model.Dependency;
+import org.ensime.maven.plugins.ensime.EnsimeConfigGenerator.Pair;
+import org.ensime.maven.plugins.ensime.model.EnsimeModule;
+import org.ensime.maven.plugins.ensime.model.EnsimeProject;
+import org.ensime.maven.plugins.ensime.model.PathTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static java.util.stream.Collectors.groupingBy;
+
+/**
+ * Module merging and Scala version detection over large reactors.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnsimeConfigGeneratorBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Reactor {
+    @Param({"10", "100", "1000"})
+    public int modules;
+
+    @Param({"50"})
+    public int jarsPerModule;
+
+    List<List<EnsimeProject>> grouped;
+
+    @Setup
+    public void setup() {
+      Map<String, List<EnsimeProject>> byModule =
+        SyntheticConfigs.projects(modules, jarsPerModule).stream()
+          .collect(groupingBy(p -> p.getId().getProject()));
+      grouped = new ArrayList<>(byModule.values());
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Artifacts {
+    /** Number of resolved artifacts seen by the Scala version detection. */
+    @Param({"1000", "50000"})
+    public int artifacts;
+
+    Set<Artifact> allDependencies;
+
+    @Setup
+    public void setup() throws Exception {
+      allDependencies = new HashSet<>();
+      DefaultArtifactHandler handler = new DefaultArtifactHandler();
+      for (int i = 0; i < artifacts; i++) {
+        boolean scala = i % 10 == 0;
+        String version = scala ? "2.1" + (i % 3) + "." + (i % 7) : "1." + (i % 13);
+        allDependencies.add(new DefaultArtifact(
+            scala ? "org.scala-lang" : "org.example.group" + (i % 97),
+            scala ? "scala-library" : "lib-" + i,
+            VersionRange.createFromVersionSpec(version), "compile", "jar", null, handler));
+      }
+    }
+  }
+
+  @Benchmark
+  public List<EnsimeModule> ensimeProjectsToModule(final Reactor reactor) {
+    List<EnsimeModule> out = new ArrayList<>(reactor.grouped.size());
+    PathTable paths = new PathTable();
+    for (List<EnsimeProject> ps : reactor.grouped) {
+      out.add(EnsimeConfigGenerator.ensimeProjectsToModule(paths, ps));
+    }
+    return out;
+  }
+
+  @Benchmark
+  public Pair<String, Optional<String>> getScalaVersion(final Artifacts artifacts) {
+    return EnsimeConfigGenerator.getScalaVersion(new ArrayList<Dependency>(),
+        new ArrayList<Dependency>(), artifacts.allDependencies, null, "2.10.6");
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.ensime.maven.plugins.ensime.model.EnsimeConfig;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end EnsimeConfigGenerator.generateConfig() over a synthetic reactor
+ * resolved by StubRepositorySystem, so resolution strategies can be compared
+ * offline. Reports the time per generation, the resolution calls made per
+ * generation and, at the end of each iteration, the peak heap.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GenerateBenchmark {
+
+  @Param({"10", "100"})
+  public int modules;
+
+  @Param({"10", "50"})
+  public int dependencies;
+
+  /** Delay added to every resolution request. */
+  @Param({"0", "200"})
+  public long latencyMicros;
+
+  /** Share of resolution requests that fail. */
+  @Param({"0.0", "0.05"})
+  public double failureRate;
+
+  private SyntheticReactor reactor;
+  private StubRepositorySystem repoSystem;
+  private Path fakeJdk;
+  private Path serverClasspaths;
+  private String javaHome;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Calls {
+    public long artifactRequests;
+    public long dependencyRequests;
+    public long failedRequests;
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    reactor = new SyntheticReactor(modules, dependencies);
+    repoSystem = new StubRepositorySystem(reactor.getPoolSize(), latencyMicros, failureRate);
+    // the generator insists on a JDK with lib/tools.jar, which newer JDKs lack
+    fakeJdk = Files.createTempDirectory("ensime-bench-jdk");
+    Files.createDirectories(fakeJdk.resolve("lib"));
+    Files.createFile(fakeJdk.resolve("lib/tools.jar"));
+    javaHome = System.getProperty("java.home");
+    System.setProperty("java.home", fakeJdk.toString());
+    // each trial starts without cached server classpaths, and never
+    // touches the user's
+    serverClasspaths = Files.createTempDirectory("ensime-bench-classpaths");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    System.setProperty("java.home", javaHome);
+    Files.delete(fakeJdk.resolve("lib/tools.jar"));
+    Files.delete(fakeJdk.resolve("lib"));
+    Files.delete(fakeJdk);
+    try (Stream<Path> entries = Files.list(serverClasspaths)) {
+      for (Path entry : entries.collect(Collectors.toList())) Files.delete(entry);
+    }
+    Files.delete(serverClasspaths);
+  }
+
+  @Setup(Level.Iteration)
+  public void resetPeak() {
+    ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+  }
+
+  @TearDown(Level.Iteration)
+  public void reportPeak() {
+    long peak = ManagementFactory.getMemoryPoolMXBeans().stream()
+      .filter(pool -> pool.getType() == MemoryType.HEAP)
+      .mapToLong(pool -> pool.getPeakUsage().getUsed())
+      .sum();
+    System.out.println(String.format("peak heap %d MB", peak >> 20));
+  }
+
+  @Benchmark
+  public EnsimeConfig generateConfig(final Calls calls) {
+    long artifacts = repoSystem.artifactRequests.get();
+    long deps = repoSystem.dependencyRequests.get();
+    long failures = repoSystem.failures.get();
+    EnsimeConfigGenerator generator = new EnsimeConfigGenerator(reactor.root(),
+        repoSystem, null, new Properties(), "2.0.0-M4", null, new SystemStreamLog());
+    generator.setServerClasspathCache(new ServerClasspathCache(serverClasspaths.toFile()));
+    EnsimeConfig config = generator.generateConfig();
+    calls.artifactRequests += repoSystem.artifactRequests.get() - artifacts;
+    calls.dependencyRequests += repoSystem.dependencyRequests.get() - deps;
+    calls.failedRequests += repoSystem.failures.get() - failures;
+    return config;
+  }
+}
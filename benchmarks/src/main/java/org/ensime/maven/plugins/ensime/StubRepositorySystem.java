@@ -0,0 +1,274 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SyncContext;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.collection.CollectResult;
+import org.eclipse.aether.deployment.DeployRequest;
+import org.eclipse.aether.deployment.DeployResult;
+import org.eclipse.aether.installation.InstallRequest;
+import org.eclipse.aether.installation.InstallResult;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.LocalRepositoryManager;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactDescriptorRequest;
+import org.eclipse.aether.resolution.ArtifactDescriptorResult;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.resolution.DependencyRequest;
+import org.eclipse.aether.resolution.DependencyResolutionException;
+import org.eclipse.aether.resolution.DependencyResult;
+import org.eclipse.aether.resolution.MetadataRequest;
+import org.eclipse.aether.resolution.MetadataResult;
+import org.eclipse.aether.resolution.VersionRangeRequest;
+import org.eclipse.aether.resolution.VersionRangeResult;
+import org.eclipse.aether.resolution.VersionRequest;
+import org.eclipse.aether.resolution.VersionResult;
+
+/**
+ * An in-memory stand-in for Aether that serves the synthetic "lib-N"
+ * artifacts of SyntheticReactor, with a configurable delay and failure rate
+ * per request. Only the calls made by EnsimeConfigGenerator are supported.
+ *
+ * Each lib-N depends on a fixed handful of other libs, so transitive
+ * resolutions walk a realistic, heavily shared graph.
+ */
+public final class StubRepositorySystem implements RepositorySystem {
+
+  private static final RemoteRepository STUB =
+    new RemoteRepository.Builder("stub", "default", "http://localhost/stub").build();
+
+  private final int poolSize;
+  private final long latencyNanos;
+  private final double failureRate;
+  private final Map<Integer, List<Integer>> closures = new ConcurrentHashMap<>();
+
+  public final AtomicLong artifactRequests = new AtomicLong();
+  public final AtomicLong dependencyRequests = new AtomicLong();
+  public final AtomicLong failures = new AtomicLong();
+
+  public StubRepositorySystem(final int poolSize, final long latencyMicros,
+      final double failureRate) {
+    this.poolSize = poolSize;
+    this.latencyNanos = latencyMicros * 1000L;
+    this.failureRate = failureRate;
+  }
+
+  public static File fileOf(final Artifact art) {
+    String classifier = art.getClassifier().isEmpty() ? "" : "-" + art.getClassifier();
+    return new File("/home/dev/.m2/repository/" + art.getGroupId().replace('.', '/')
+        + "/" + art.getArtifactId() + "/" + art.getVersion() + "/" + art.getArtifactId()
+        + "-" + art.getVersion() + classifier + "." + art.getExtension());
+  }
+
+  public static Artifact lib(final int index, final String classifier) {
+    return new DefaultArtifact("org.example.group" + (index % 97), "lib-" + index,
+        classifier, "jar", "1." + (index % 13));
+  }
+
+  private static int indexOf(final Artifact art) {
+    String id = art.getArtifactId();
+    return id.startsWith("lib-") ? Integer.parseInt(id.substring(4)) : -1;
+  }
+
+  private List<Integer> children(final int index) {
+    List<Integer> children = new ArrayList<>();
+    // a tree of bounded depth that keeps landing on the same shared libs
+    if (index % 5 != 0) {
+      children.add((index * 7 + 1) % poolSize);
+      children.add((index * 13 + 5) % poolSize);
+    }
+    if (index % 3 == 0) children.add(index / 3);
+    children.remove(Integer.valueOf(index));
+    return children;
+  }
+
+  private List<Integer> closure(final int root) {
+    return closures.computeIfAbsent(root, r -> {
+      Set<Integer> seen = new LinkedHashSet<>();
+      List<Integer> frontier = Collections.singletonList(r);
+      for (int depth = 0; depth < 4 && !frontier.isEmpty(); depth++) {
+        List<Integer> next = new ArrayList<>();
+        for (int i : frontier) {
+          if (seen.add(i)) next.addAll(children(i));
+        }
+        frontier = next;
+      }
+      return new ArrayList<>(seen);
+    });
+  }
+
+  private void delay() {
+    if (latencyNanos > 0) LockSupport.parkNanos(latencyNanos);
+  }
+
+  private boolean fails() {
+    return failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate;
+  }
+
+  private static boolean exists(final Artifact art) {
+    int index = indexOf(art);
+    // like Central: not everything publishes sources and javadoc
+    return index < 0 || art.getClassifier().isEmpty()
+      || (art.getClassifier().equals("sources") && index % 4 != 0)
+      || (art.getClassifier().equals("javadoc") && index % 3 != 0);
+  }
+
+  private static ArtifactResult result(final ArtifactRequest request, final Artifact art) {
+    ArtifactResult result = new ArtifactResult(request);
+    if (exists(art)) {
+      result.setArtifact(art.setFile(fileOf(art)));
+      result.setRepository(STUB);
+    }
+    return result;
+  }
+
+  @Override
+  public ArtifactResult resolveArtifact(final RepositorySystemSession session,
+      final ArtifactRequest request) throws ArtifactResolutionException {
+    artifactRequests.incrementAndGet();
+    delay();
+    ArtifactResult result = result(request, request.getArtifact());
+    if (fails() || !result.isResolved()) {
+      failures.incrementAndGet();
+      throw new ArtifactResolutionException(Collections.singletonList(result));
+    }
+    return result;
+  }
+
+  @Override
+  public DependencyResult resolveDependencies(final RepositorySystemSession session,
+      final DependencyRequest request) throws DependencyResolutionException {
+    dependencyRequests.incrementAndGet();
+    delay();
+    Artifact root = request.getCollectRequest().getRoot().getArtifact();
+    DependencyResult result = new DependencyResult(request);
+    List<ArtifactResult> results = new ArrayList<>();
+    ArtifactRequest rootRequest = new ArtifactRequest(root, null, null);
+    results.add(result(rootRequest, root));
+    int index = indexOf(root);
+    if (index >= 0) {
+      for (int child : closure(index)) {
+        if (child != index) {
+          Artifact dep = lib(child, "");
+          results.add(result(new ArtifactRequest(dep, null, null), dep));
+        }
+      }
+    }
+    result.setArtifactResults(results);
+    if (fails() || !results.get(0).isResolved()) {
+      failures.incrementAndGet();
+      throw new DependencyResolutionException(result, new Exception(
+          "Could not resolve " + root + " from stub"));
+    }
+    return result;
+  }
+
+  @Override
+  public List<RemoteRepository> newResolutionRepositories(
+      final RepositorySystemSession session, final List<RemoteRepository> repositories) {
+    return repositories;
+  }
+
+  @Override
+  public VersionRangeResult resolveVersionRange(final RepositorySystemSession session,
+      final VersionRangeRequest request) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public VersionResult resolveVersion(final RepositorySystemSession session,
+      final VersionRequest request) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public ArtifactDescriptorResult readArtifactDescriptor(
+      final RepositorySystemSession session, final ArtifactDescriptorRequest request) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public CollectResult collectDependencies(final RepositorySystemSession session,
+      final CollectRequest request) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public List<ArtifactResult> resolveArtifacts(final RepositorySystemSession session,
+      final Collection<? extends ArtifactRequest> requests)
+      throws ArtifactResolutionException {
+    List<ArtifactResult> results = new ArrayList<>();
+    for (ArtifactRequest request : requests) {
+      results.add(resolveArtifact(session, request));
+    }
+    return results;
+  }
+
+  @Override
+  public List<MetadataResult> resolveMetadata(final RepositorySystemSession session,
+      final Collection<? extends MetadataRequest> requests) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public InstallResult install(final RepositorySystemSession session,
+      final InstallRequest request) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public DeployResult deploy(final RepositorySystemSession session,
+      final DeployRequest request) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public LocalRepositoryManager newLocalRepositoryManager(
+      final RepositorySystemSession session, final LocalRepository localRepository) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public SyncContext newSyncContext(final RepositorySystemSession session,
+      final boolean shared) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public RemoteRepository newDeploymentRepository(final RepositorySystemSession session,
+      final RemoteRepository repository) {
+    throw new UnsupportedOperationException();
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.ensime.maven.plugins.ensime.model.EnsimeConfig;
+import org.ensime.maven.plugins.ensime.model.EnsimeModule;
+import org.ensime.maven.plugins.ensime.model.EnsimeProject;
+import org.ensime.maven.plugins.ensime.model.EnsimeProjectId;
+import org.ensime.maven.plugins.ensime.model.PathTable;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Deterministic, in-memory configurations shaped like a large reactor: every
+ * module draws its jars from one shared pool, so classpaths overlap the way
+ * they do in a real monorepo. None of the files exist.
+ */
+public final class SyntheticConfigs {
+
+  public static final int MAX_JARS = 50000;
+
+  private SyntheticConfigs() {}
+
+  /**
+   * A shared pool of jar paths laid out like a local Maven repository.
+   */
+  public static List<File> jarPool(final int size) {
+    List<File> jars = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      String group = "org/example/group" + (i % 97);
+      String artifact = (i % 50 == 0 ? "monkey-" : "lib-") + i;
+      jars.add(new File("/home/dev/.m2/repository/" + group + "/" + artifact
+          + "/1." + (i % 13) + "/" + artifact + "-1." + (i % 13) + ".jar"));
+    }
+    return jars;
+  }
+
+  private static Set<File> draw(final List<File> pool, final Random random,
+      final int count) {
+    Set<File> files = new HashSet<>();
+    while (files.size() < Math.min(count, pool.size())) {
+      files.add(pool.get(random.nextInt(pool.size())));
+    }
+    return files;
+  }
+
+  /**
+   * The compile and test projects of each module.
+   */
+  public static List<EnsimeProject> projects(final int modules,
+      final int jarsPerModule) {
+    Random random = new Random(modules * 31L + jarsPerModule);
+    List<File> pool = jarPool(Math.min(MAX_JARS, modules * jarsPerModule));
+    List<EnsimeProject> projects = new ArrayList<>();
+    for (int m = 0; m < modules; m++) {
+      String name = "module-" + m;
+      File base = new File("/work/monorepo/" + name);
+      List<EnsimeProjectId> depends = new ArrayList<>();
+      for (int d = Math.max(0, m - 3); d < m; d++) {
+        depends.add(new EnsimeProjectId("module-" + d, "compile"));
+      }
+      for (String config : Arrays.asList("compile", "test")) {
+        String dir = config.equals("compile") ? "main" : "test";
+        projects.add(new EnsimeProject(
+            new EnsimeProjectId(name, config), depends,
+            new HashSet<>(Arrays.asList(new File(base, "src/" + dir + "/scala"),
+                new File(base, "src/" + dir + "/java"))),
+            new HashSet<>(Arrays.asList(new File(base, "target/classes"))),
+            Arrays.asList("-feature", "-deprecation", "-Xlint"),
+            Arrays.asList("-source", "1.8"),
+            draw(pool, random, jarsPerModule),
+            draw(pool, random, jarsPerModule / 2),
+            draw(pool, random, jarsPerModule / 4)));
+      }
+    }
+    return projects;
+  }
+
+  public static EnsimeConfig config(final int modules, final int jarsPerModule) {
+    List<EnsimeProject> projects = projects(modules, jarsPerModule);
+    Map<String, EnsimeModule> ms = new HashMap<>();
+    PathTable paths = new PathTable();
+    projects.stream().collect(groupingBy(p -> p.getId().getProject()))
+      .forEach((name, ps) ->
+        ms.put(name, EnsimeConfigGenerator.ensimeProjectsToModule(paths, ps)));
+    List<File> toolchain = jarPool(40);
+    return new EnsimeConfig(new File("/work/monorepo"),
+        new File("/work/monorepo/.ensime_cache"),
+        new HashSet<>(toolchain.subList(0, 4)), new HashSet<>(toolchain),
+        "2.0.0-M4", "monorepo", "2.11.8",
+        Arrays.asList("-feature", "-deprecation"), ms,
+        new File("/usr/lib/jvm/java-8"), Arrays.asList("-Xss2m"),
+        Arrays.asList("-source", "1.8"),
+        new HashSet<>(Arrays.asList(new File("/usr/lib/jvm/java-8/src.zip"))),
+        projects);
+  }
+
+  public static List<File> files(final int count) {
+    return jarPool(count).stream().collect(toList());
+  }
+}
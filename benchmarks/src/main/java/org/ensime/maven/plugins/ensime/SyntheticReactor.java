@@ -0,0 +1,109 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.PluginManagement;
+import org.apache.maven.model.Repository;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * An in-memory reactor of MavenProjects whose direct dependencies are drawn
+ * from the "lib-N" artifacts served by StubRepositorySystem.
+ */
+public final class SyntheticReactor {
+
+  private final MavenProject root;
+  private final List<MavenProject> modules = new ArrayList<>();
+  private final int poolSize;
+
+  public SyntheticReactor(final int moduleCount, final int dependenciesPerModule) {
+    // a pool smaller than the total draw, so modules share most libraries
+    this.poolSize = Math.max(dependenciesPerModule * 4,
+        moduleCount * dependenciesPerModule / 5);
+    Random random = new Random(moduleCount * 31L + dependenciesPerModule);
+    File base = new File("/work/monorepo");
+    DefaultArtifactHandler handler = new DefaultArtifactHandler("jar");
+
+    root = project(base, "monorepo", "pom");
+    Set<Artifact> rootArtifacts = new HashSet<>();
+    rootArtifacts.add(new DefaultArtifact("org.scala-lang", "scala-library",
+        VersionRange.createFromVersion("2.11.8"), "compile", "jar", null, handler));
+
+    for (int m = 0; m < moduleCount; m++) {
+      MavenProject module = project(new File(base, "module-" + m), "module-" + m, "jar");
+      Set<Artifact> artifacts = new HashSet<>();
+      while (artifacts.size() < Math.min(dependenciesPerModule, poolSize)) {
+        int index = random.nextInt(poolSize);
+        org.eclipse.aether.artifact.Artifact lib = StubRepositorySystem.lib(index, "");
+        Dependency dependency = new Dependency();
+        dependency.setGroupId(lib.getGroupId());
+        dependency.setArtifactId(lib.getArtifactId());
+        dependency.setVersion(lib.getVersion());
+        if (artifacts.add(new DefaultArtifact(lib.getGroupId(), lib.getArtifactId(),
+            VersionRange.createFromVersion(lib.getVersion()), "compile", "jar", null,
+            handler))) {
+          module.getModel().addDependency(dependency);
+        }
+      }
+      module.setDependencyArtifacts(artifacts);
+      module.setCollectedProjects(new ArrayList<>());
+      rootArtifacts.addAll(artifacts);
+      modules.add(module);
+    }
+    root.setArtifacts(rootArtifacts);
+    root.setCollectedProjects(new ArrayList<>(modules));
+  }
+
+  private static MavenProject project(final File dir, final String artifactId,
+      final String packaging) {
+    Model model = new Model();
+    model.setGroupId("org.example");
+    model.setArtifactId(artifactId);
+    model.setVersion("1.0-SNAPSHOT");
+    model.setPackaging(packaging);
+    model.setName(artifactId);
+    Build build = new Build();
+    build.setOutputDirectory(new File(dir, "target/classes").getPath());
+    build.setPluginManagement(new PluginManagement());
+    model.setBuild(build);
+    Repository central = new Repository();
+    central.setId("central");
+    central.setUrl("https://repo.maven.apache.org/maven2");
+    model.addRepository(central);
+    MavenProject project = new MavenProject(model);
+    project.setFile(new File(dir, "pom.xml"));
+    return project;
+  }
+
+  public int getPoolSize() { return poolSize; }
+
+  public MavenProject root() {
+    return root;
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime.formatter;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.ensime.maven.plugins.ensime.SyntheticConfigs;
+import org.ensime.maven.plugins.ensime.model.EnsimeConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rendering of synthetic reactors. With 1000 modules the jar pool reaches
+ * SyntheticConfigs.MAX_JARS distinct paths.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SExpFormatterBenchmark {
+
+  @Param({"10", "100", "1000"})
+  public int modules;
+
+  @Param({"50"})
+  public int jarsPerModule;
+
+  private EnsimeConfig config;
+  private List<File> files;
+
+  @Setup
+  public void setup() {
+    config = SyntheticConfigs.config(modules, jarsPerModule);
+    files = SyntheticConfigs.files(Math.min(SyntheticConfigs.MAX_JARS,
+        modules * jarsPerModule));
+  }
+
+  @Benchmark
+  public String toSExp() {
+    return SExpFormatter.toSExp(config);
+  }
+
+  @Benchmark
+  public List<File> orderFiles() {
+    return SExpFormatter.orderFiles(files);
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * A goal that resolves artifacts through an EnsimeConfigGenerator: the
+ * repository settings, and the routes and versions kept between runs.
+ */
+abstract public class AbstractResolveMojo extends AbstractMojo {
+
+  /**
+   * Milliseconds a repository may take to connect, or between two reads of
+   * an answer, before the transfer fails. A repository that keeps sending,
+   * however slowly, is waited for. Unset or 0 keeps the session's own
+   * timeouts, e.g. aether.connector.requestTimeout or those of settings.xml.
+   */
+  @Parameter(property = "ensime.resolve.readTimeout", defaultValue = "0")
+  protected int readTimeout;
+
+  /**
+   * Consecutive failed transfers after which a repository is skipped for
+   * the rest of the run. 0 never skips.
+   */
+  @Parameter(property = "ensime.resolve.maxFailures", defaultValue = "3")
+  protected int maxRepositoryFailures;
+
+  /**
+   * Remembers which repository served each groupId, so it is asked first.
+   */
+  @Parameter(property = "ensime.resolve.routes",
+              defaultValue = "${user.home}/.cache/ensime-maven/routes.properties")
+  protected File routesFile;
+
+  /**
+   * Minutes for which the versions that ranges and SNAPSHOTs resolved to
+   * are reused instead of reading repository metadata again, regardless of
+   * Maven's update policy. 0 only reuses them within the run.
+   */
+  @Parameter(property = "ensime.resolve.versionInterval", defaultValue = "60")
+  protected int versionInterval;
+
+  /**
+   * Where the versions of ranges and SNAPSHOTs are kept between runs.
+   */
+  @Parameter(property = "ensime.resolve.versions",
+              defaultValue = "${user.home}/.cache/ensime-maven/versions.properties")
+  protected File versionsFile;
+
+  private RepositoryRoutes routes;
+  private VersionCache versions;
+
+  /**
+   * Applies the repository settings and loads what earlier runs learned.
+   */
+  protected void configure(final EnsimeConfigGenerator generator) {
+    generator.setReadTimeout(readTimeout);
+    generator.setMaxRepositoryFailures(maxRepositoryFailures);
+    routes = RepositoryRoutes.load(routesFile);
+    generator.setRepositoryRoutes(routes);
+    versions = VersionCache.load(versionsFile, versionInterval);
+    generator.setVersionCache(versions);
+  }
+
+  /**
+   * Reports the repositories that were skipped and keeps what this run
+   * learned for the next one.
+   */
+  protected void finish(final EnsimeConfigGenerator generator) {
+    generator.getRepositoryHealth().summary().forEach(getLog()::warn);
+    try {
+      routes.save();
+    } catch(IOException e) {
+      getLog().warn("Unable to save repository routes to " + routesFile, e);
+    }
+    try {
+      versions.save();
+    } catch(IOException e) {
+      getLog().warn("Unable to save resolved versions to " + versionsFile, e);
+    }
+  }
+}
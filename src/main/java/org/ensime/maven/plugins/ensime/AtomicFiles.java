@@ -0,0 +1,70 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Replaces files by writing them next to their final location and renaming
+ * them into place, so a reader, a concurrent build or an interrupted one
+ * never sees a file half written.
+ */
+final public class AtomicFiles {
+
+  /**
+   * Writes the content of a file to the given path.
+   */
+  public interface Content {
+    void writeTo(Path staging) throws IOException;
+  }
+
+  private AtomicFiles() {
+  }
+
+  public static void write(final Path target, final Content content) throws IOException {
+    Path dir = target.toAbsolutePath().getParent();
+    Files.createDirectories(dir);
+    Path staging = dir.resolve(".tmp-" + UUID.randomUUID());
+    try {
+      content.writeTo(staging);
+      try {
+        Files.move(staging, target, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException ex) {
+        Files.move(staging, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(staging);
+    }
+  }
+
+  public static void store(final File target, final Properties props,
+      final String comment) throws IOException {
+    write(target.toPath(), staging -> {
+      try (OutputStream out = Files.newOutputStream(staging)) {
+        props.store(out, comment);
+      }
+    });
+  }
+}
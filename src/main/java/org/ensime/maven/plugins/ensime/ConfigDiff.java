@@ -0,0 +1,320 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+import org.ensime.maven.plugins.ensime.formatter.JsonFormatter;
+import org.ensime.maven.plugins.ensime.model.EnsimeConfig;
+import org.ensime.maven.plugins.ensime.model.EnsimeProject;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * What changed between the .ensime on disk and the one generate just wrote,
+ * module by module, and whether the change needs a re-index.
+ *
+ * There is no reader for .ensime, so every generate also keeps a snapshot
+ * of what it wrote in .ensime_cache/config-snapshot.properties, together
+ * with the digest of the file. The snapshot only stands for the .ensime on
+ * disk while the digests match; otherwise the previous configuration is
+ * unknown and the change is reported as a classpath change.
+ */
+final public class ConfigDiff {
+
+  public static final String SNAPSHOT_NAME = "config-snapshot.properties";
+  public static final String REPORT_NAME = "config-diff.json";
+
+  private static final String DIGEST = "#digest";
+  private static final String CHANGE = "#change";
+  private static final String CLASSPATH_CHANGED_AT = "#classpath-changed-at";
+
+  public enum Change {
+    NONE, COSMETIC, OPTIONS_ONLY, CLASSPATH_CHANGED;
+
+    @Override
+    public String toString() {
+      return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+  }
+
+  // categories whose changes do not affect the index
+  private static final Set<String> OPTIONS = new TreeSet<>(Arrays.asList(
+      "options", "compiler-args", "java-compiler-args", "java-flags"));
+
+  /**
+   * The parts of a configuration that matter to the server, keyed by
+   * "config/<category>" or "module/<name>/<category>".
+   */
+  final public static class Snapshot {
+    private final String digest;
+    private final Map<String, List<String>> entries;
+
+    Snapshot(final String digest, final Map<String, List<String>> entries) {
+      this.digest = digest;
+      this.entries = entries;
+    }
+
+    public String getDigest() { return digest; }
+    public Map<String, List<String>> getEntries() { return entries; }
+  }
+
+  private ConfigDiff() {}
+
+  private static List<String> paths(final Collection<File> files) {
+    return files.stream().map(File::getAbsolutePath).sorted().distinct().collect(toList());
+  }
+
+  private static List<String> union(final List<EnsimeProject> projects,
+      final Function<EnsimeProject, Collection<File>> files) {
+    return paths(projects.stream().flatMap(p -> files.apply(p).stream()).collect(toList()));
+  }
+
+  /**
+   * The snapshot of a configuration written to the given file.
+   */
+  public static Snapshot of(final EnsimeConfig config, final File dotEnsime)
+      throws IOException {
+    Map<String, List<String>> entries = new TreeMap<>();
+    entries.put("config/scala-version", Collections.singletonList(config.getScalaVersion()));
+    entries.put("config/server-version",
+      Collections.singletonList(config.getEnsimeServerVersion()));
+    entries.put("config/java-home",
+      Collections.singletonList(config.getJavaHome().getAbsolutePath()));
+    entries.put("config/scala-compiler-jars", paths(config.getScalaCompilerJars()));
+    entries.put("config/ensime-server-jars", paths(config.getEnsimeServerJars()));
+    entries.put("config/java-sources", paths(config.getJavaSrc()));
+    entries.put("config/compiler-args", config.getScalacOptions());
+    entries.put("config/java-compiler-args", config.getJavacOptions());
+    entries.put("config/java-flags", config.getJavaFlags());
+
+    Map<String, List<EnsimeProject>> modules = new TreeMap<>();
+    config.getProjects().forEach(p ->
+      modules.computeIfAbsent(p.getId().getProject(), k -> new ArrayList<>()).add(p));
+    modules.forEach((name, projects) -> {
+      String prefix = "module/" + name + "/";
+      entries.put(prefix + "sources", union(projects, EnsimeProject::getSources));
+      entries.put(prefix + "targets", union(projects, EnsimeProject::getTargets));
+      List<String> jars = new ArrayList<>(union(projects, EnsimeProject::getLibraryJars));
+      jars.addAll(union(projects, EnsimeProject::getLibrarySources));
+      jars.addAll(union(projects, EnsimeProject::getLibraryDocs));
+      entries.put(prefix + "jars", jars.stream().sorted().distinct().collect(toList()));
+      entries.put(prefix + "depends", projects.stream()
+        .flatMap(p -> p.getDependsOn().stream())
+        .map(id -> id.getProject() + ":" + id.getConfig())
+        .sorted().distinct().collect(toList()));
+      entries.put(prefix + "options", projects.stream()
+        .flatMap(p -> Arrays.asList(p.getScalacOptions(), p.getJavacOptions()).stream())
+        .flatMap(List::stream).collect(toList()));
+    });
+    return new Snapshot(digest(dotEnsime).orElse(""), entries);
+  }
+
+  static Optional<String> digest(final File file) throws IOException {
+    if (!file.isFile()) return Optional.empty();
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest.digest(Files.readAllBytes(file.toPath()))) {
+        hex.append(String.format("%02x", b));
+      }
+      return Optional.of(hex.toString());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static Properties load(final File cacheDir) {
+    Properties props = new Properties();
+    File file = new File(cacheDir, SNAPSHOT_NAME);
+    if (file.isFile()) {
+      try (InputStream in = new FileInputStream(file)) {
+        props.load(in);
+      } catch (IOException e) {
+        props.clear();
+      }
+    }
+    return props;
+  }
+
+  /**
+   * The snapshot of the .ensime on disk, if the last one kept still
+   * describes it.
+   */
+  public static Optional<Snapshot> previous(final File cacheDir, final File dotEnsime)
+      throws IOException {
+    Properties props = load(cacheDir);
+    Optional<String> digest = digest(dotEnsime);
+    if (!digest.isPresent() || !digest.get().equals(props.getProperty(DIGEST))) {
+      return Optional.empty();
+    }
+    Map<String, List<String>> entries = new TreeMap<>();
+    props.stringPropertyNames().stream().filter(k -> !k.startsWith("#"))
+      .forEach(k -> entries.put(k, props.getProperty(k).isEmpty()
+        ? Collections.emptyList() : Arrays.asList(props.getProperty(k).split("\n"))));
+    return Optional.of(new Snapshot(digest.get(), entries));
+  }
+
+  /**
+   * The classification of the last generate, for tools deciding whether to
+   * re-index.
+   */
+  public static Optional<Change> lastChange(final File cacheDir) {
+    return Optional.ofNullable(load(cacheDir).getProperty(CHANGE)).flatMap(c -> {
+      try {
+        return Optional.of(Change.valueOf(c.toUpperCase(Locale.ROOT).replace('-', '_')));
+      } catch (IllegalArgumentException e) {
+        return Optional.empty();
+      }
+    });
+  }
+
+  /**
+   * Whether an index written at the given time still covers the .ensime on
+   * disk: the last generate wrote it and changed nothing the index depends
+   * on, and no generate changed the classpath after the index was written.
+   */
+  public static boolean isIndexCurrent(final File cacheDir, final File dotEnsime,
+      final long indexedAt) throws IOException {
+    boolean unchanged = lastChange(cacheDir)
+      .filter(c -> c != Change.CLASSPATH_CHANGED).isPresent();
+    if (!unchanged || !previous(cacheDir, dotEnsime).isPresent()) return false;
+    try {
+      return Long.parseLong(load(cacheDir).getProperty(CLASSPATH_CHANGED_AT, "")) <= indexedAt;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * The entries added and removed, by module or "config", then category.
+   */
+  final public static class Report {
+    private final Change change;
+    private final boolean baseline;
+    private final Map<String, Map<String, Map<String, List<String>>>> changes;
+
+    Report(final Change change, final boolean baseline,
+        final Map<String, Map<String, Map<String, List<String>>>> changes) {
+      this.change = change;
+      this.baseline = baseline;
+      this.changes = changes;
+    }
+
+    public Change getChange() { return change; }
+    public Map<String, Map<String, Map<String, List<String>>>> getChanges() { return changes; }
+
+    public String summary() {
+      if (!baseline) return "Configuration change: " + change + " (no previous configuration)";
+      return "Configuration change: " + change + (changes.isEmpty() ? "" :
+        " in " + changes.keySet().stream().collect(joining(", ")));
+    }
+
+    public String toJson() {
+      Map<String, Object> json = new LinkedHashMap<>();
+      json.put("change", change.toString());
+      json.put("baseline", baseline);
+      json.put("changes", changes);
+      return JsonFormatter.toJson(json);
+    }
+  }
+
+  private static String scope(final String key) {
+    return key.startsWith("module/")
+      ? key.substring("module/".length(), key.lastIndexOf('/')) : "config";
+  }
+
+  private static String category(final String key) {
+    return key.substring(key.lastIndexOf('/') + 1);
+  }
+
+  private static List<String> minus(final List<String> a, final List<String> b) {
+    Set<String> exclude = new TreeSet<>(b);
+    return a.stream().filter(s -> !exclude.contains(s)).distinct().collect(toList());
+  }
+
+  /**
+   * Compares the configuration that was on disk with the one just written.
+   */
+  public static Report diff(final Optional<Snapshot> before, final Snapshot after) {
+    if (!before.isPresent()) {
+      return new Report(Change.CLASSPATH_CHANGED, false, Collections.emptyMap());
+    }
+    Map<String, List<String>> old = before.get().getEntries();
+    Set<String> keys = new TreeSet<>(old.keySet());
+    keys.addAll(after.getEntries().keySet());
+
+    Map<String, Map<String, Map<String, List<String>>>> changes = new TreeMap<>();
+    boolean classpath = false;
+    for (String key : keys) {
+      List<String> was = old.getOrDefault(key, Collections.emptyList());
+      List<String> is = after.getEntries().getOrDefault(key, Collections.emptyList());
+      if (was.equals(is)) continue;
+      Map<String, List<String>> delta = new LinkedHashMap<>();
+      delta.put("added", minus(is, was));
+      delta.put("removed", minus(was, is));
+      changes.computeIfAbsent(scope(key), k -> new TreeMap<>()).put(category(key), delta);
+      classpath |= !OPTIONS.contains(category(key));
+    }
+
+    Change change = !changes.isEmpty()
+      ? (classpath ? Change.CLASSPATH_CHANGED : Change.OPTIONS_ONLY)
+      : (before.get().getDigest().equals(after.getDigest()) ? Change.NONE : Change.COSMETIC);
+    return new Report(change, true, changes);
+  }
+
+  /**
+   * Keeps the snapshot of the .ensime just written, with the change that
+   * led to it, and writes the report.
+   */
+  public static void write(final File cacheDir, final Snapshot snapshot, final Report report)
+      throws IOException {
+    Properties props = new Properties();
+    snapshot.getEntries().forEach((k, v) -> props.setProperty(k, v.stream().collect(joining("\n"))));
+    props.setProperty(DIGEST, snapshot.getDigest());
+    props.setProperty(CHANGE, report.getChange().toString());
+    String changedAt = load(cacheDir).getProperty(CLASSPATH_CHANGED_AT);
+    props.setProperty(CLASSPATH_CHANGED_AT,
+      report.getChange() == Change.CLASSPATH_CHANGED || changedAt == null
+        ? String.valueOf(System.currentTimeMillis()) : changedAt);
+    AtomicFiles.store(new File(cacheDir, SNAPSHOT_NAME), props,
+      "What generate last wrote to .ensime");
+    AtomicFiles.write(new File(cacheDir, REPORT_NAME).toPath(), staging ->
+      Files.write(staging, (report.toJson() + "\n").getBytes(StandardCharsets.UTF_8)));
+  }
+}
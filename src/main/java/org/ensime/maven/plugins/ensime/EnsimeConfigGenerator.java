@@ -17,6 +17,7 @@ package org.ensime.maven.plugins.ensime;
 
 import java.util.Comparator;
 import java.util.List;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -26,8 +27,14 @@ import org.ensime.maven.plugins.ensime.model.EnsimeProject;
 import org.ensime.maven.plugins.ensime.model.EnsimeProjectId;
 import org.ensime.maven.plugins.ensime.model.EnsimeConfig;
 import org.ensime.maven.plugins.ensime.model.EnsimeModule;
+import org.ensime.maven.plugins.ensime.model.FileSet;
+import org.ensime.maven.plugins.ensime.model.PathTable;
 
 import org.ensime.maven.plugins.ensime.formatter.SExpFormatter;
+import org.ensime.maven.plugins.ensime.formatter.SExpFormatter.Sections;
+import org.ensime.maven.plugins.ensime.formatter.SExpStreamWriter;
+import org.ensime.maven.plugins.ensime.jfr.Flight;
+import org.ensime.maven.plugins.ensime.jfr.Span;
 
 import java.lang.management.ManagementFactory;
 import java.io.File;
@@ -39,31 +46,45 @@ import java.io.IOException;
 
 import java.util.Properties;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.Map;
+import java.util.TreeMap;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.model.Repository;
-import org.apache.maven.model.Plugin;
 import org.apache.maven.artifact.Artifact;
 
+import org.eclipse.aether.ConfigurationProperties;
+import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.eclipse.aether.RepositorySystemSession;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResult;
 import org.eclipse.aether.resolution.DependencyRequest;
 import org.eclipse.aether.resolution.DependencyResolutionException;
+import org.eclipse.aether.resolution.DependencyResult;
+import org.eclipse.aether.resolution.VersionRangeRequest;
+import org.eclipse.aether.resolution.VersionRangeResult;
+import org.eclipse.aether.resolution.VersionRequest;
+import org.eclipse.aether.resolution.VersionResult;
 import org.eclipse.aether.repository.RemoteRepository;
 import org.eclipse.aether.collection.CollectRequest;
 import org.eclipse.aether.graph.Dependency;
 
-import org.codehaus.plexus.util.xml.Xpp3Dom;
-
 import static java.util.stream.Collectors.toMap;
 import static java.util.stream.Collectors.toSet;
 import static java.util.stream.Collectors.toList;
@@ -74,23 +95,25 @@ import static java.util.stream.Collectors.groupingBy;
 final public class EnsimeConfigGenerator {
   private final MavenProject project;
   private final RepositorySystem repoSystem;
-  private final RepositorySystemSession session;
+  private RepositorySystemSession session;
   private final Properties properties;
   private final List<MavenProject> modules;
   private final Log log;
+  private final GenerationMetrics metrics = new GenerationMetrics();
+  private final Map<MavenProject, PluginSettings> pluginSettings =
+    Collections.synchronizedMap(new IdentityHashMap<>());
+  // the module being converted on this thread, for flight recorder events
+  private final ThreadLocal<String> currentModule = new ThreadLocal<>();
+  private Sections sections;
+  // numbers the paths of the current generation, dropped with it
+  private PathTable paths = new PathTable();
+  private RepositoryHealth health = new RepositoryHealth(0);
+  private RepositoryRoutes routes = RepositoryRoutes.inMemory();
+  private VersionCache versions = VersionCache.inMemory();
+  private ServerClasspathCache serverClasspathCache =
+    new ServerClasspathCache(ServerClasspathCache.DEFAULT_ROOT);
 
-  private final static String SCALA_MAVEN_PLUGIN_GROUP_ID = "net.alchim31.maven";
   private final static String DEFAULT_SCALA_VERSION = "2.10.6";
-  private final static String SCALA_MAVEN_PLUGIN_ARTIFACT_ID = "scala-maven-plugin";
-
-  private final static String JAVA_MAVEN_PLUGIN_GROUP_ID = "org.apache.maven.plugins";
-  private final static String JAVA_MAVEN_PLUGIN_ARTIFACT_ID = "maven-compiler-plugin";
-
-  private final static String SCALA_MAVEN_PLUGIN =
-    SCALA_MAVEN_PLUGIN_GROUP_ID + ":" +SCALA_MAVEN_PLUGIN_ARTIFACT_ID;
-
-  private final static String JAVA_MAVEN_PLUGIN =
-    JAVA_MAVEN_PLUGIN_GROUP_ID + ":" + JAVA_MAVEN_PLUGIN_ARTIFACT_ID;
 
   private final String ENSIME_SERVER_VERSION;
 
@@ -117,21 +140,63 @@ final public class EnsimeConfigGenerator {
     this.ENSIME_SERVER_VERSION = ensimeServerVersion;
     this.ENSIME_SCALA_VERSION = ensimeScalaVersion;
     this.log = log;
+    this.sections = Sections.forServerVersion(ensimeServerVersion);
 
-    List<MavenProject> temp = project.getCollectedProjects();
+    List<MavenProject> temp = new ArrayList<>(project.getCollectedProjects());
     temp.add(project);
     modules = temp.stream().
       filter(p -> !p.getPackaging().equals("pom")).collect(toList());
   }
 
-  private List<RemoteRepository> remoteRepositories() {
+  /**
+   * The project's repositories, after mirrors, without the ones that failed
+   * too often, and the one that last served the groupId first.
+   */
+  private List<RemoteRepository> remoteRepositories(final String groupId) {
     List<Repository> repos = project.getRepositories();
-    return repoSystem.newResolutionRepositories(session,
+    return routes.order(groupId, repoSystem.newResolutionRepositories(session,
         repos.stream()
         .map(r ->
           new RemoteRepository.Builder(r.getId(), "default", r.getUrl())
           .build()
-        ).collect(toList()));
+        ).collect(toList()))
+      .stream()
+      .filter(r -> {
+        if (!health.isTripped(r.getId())) return true;
+        health.skipped(r.getId());
+        return false;
+      }).collect(toList()));
+  }
+
+  /**
+   * Records the repositories that failed before a resolution was served,
+   * then the ones that served it.
+   */
+  private void succeeded(final DefaultArtifact art, final List<ArtifactResult> results,
+      final List<Exception> exceptions) {
+    List<Exception> failures = new ArrayList<>(exceptions);
+    results.forEach(r -> failures.addAll(r.getExceptions()));
+    if (!failures.isEmpty()) failed(art, failures);
+    health.succeeded(results);
+    results.stream()
+      .filter(r -> r.isResolved() && r.getRepository() instanceof RemoteRepository)
+      .forEach(r -> routes.served(r.getArtifact().getGroupId(),
+        r.getRepository().getId()));
+  }
+
+  /**
+   * Records a failed resolution against the repositories that caused it.
+   */
+  private void failed(final DefaultArtifact art, final Exception ex) {
+    if (log.isDebugEnabled()) {
+      log.debug("Unable to resolve " + art + ": " + ex.getMessage());
+    }
+    failed(art, Collections.singletonList(ex));
+  }
+
+  private void failed(final DefaultArtifact art, final List<? extends Exception> exceptions) {
+    health.failed(exceptions).forEach(repository -> log.warn("Repository " + repository
+        + " keeps failing, skipping it for the rest of the run"));
   }
 
   private static Optional<String> output(final InputStream inputStream) {
@@ -150,6 +215,13 @@ final public class EnsimeConfigGenerator {
   }
 
   private File getJavaHome() {
+    Span span = Flight.begin(Flight.JAVA_HOME, null, null);
+    File javaHome = metrics.time("java-home", this::findJavaHome);
+    span.end(javaHome.getPath(), 0);
+    return javaHome;
+  }
+
+  private File findJavaHome() {
 
     Optional<String> macResult = Optional.empty();
     try {
@@ -194,46 +266,141 @@ final public class EnsimeConfigGenerator {
   }
 
   private ArtifactRequest artifactRequest(final DefaultArtifact art) {
-    return new ArtifactRequest(art, remoteRepositories(), null);
+    return new ArtifactRequest(art, remoteRepositories(art.getGroupId()), null);
+  }
+
+  private static String operation(final String name, final DefaultArtifact art) {
+    return art.getClassifier().isEmpty() ? name : name + ":" + art.getClassifier();
+  }
+
+  private static String repositoryOf(final ArtifactResult result) {
+    return Optional.ofNullable(result.getRepository())
+      .map(r -> r.getId()).orElse("none");
+  }
+
+  /**
+   * The artifact with its version range or SNAPSHOT version replaced by the
+   * concrete version, looked up once per run or interval.
+   */
+  private DefaultArtifact pinned(final DefaultArtifact art) {
+    String version = art.getVersion();
+    if (!VersionCache.isDynamic(version)) return art;
+    boolean range = !version.endsWith("-SNAPSHOT");
+    // a SNAPSHOT's timestamped version may differ between classifiers
+    String key = art.getGroupId() + ":" + art.getArtifactId() + ":" + (range ?
+      version : art.getExtension() + ":" + art.getClassifier() + ":" + version);
+    long start = System.nanoTime();
+    boolean[] looked = { false };
+    Optional<String> pinned = versions.get(key, () -> {
+      looked[0] = true;
+      return range ? highestVersion(art) : snapshotVersion(art);
+    });
+    if (!looked[0]) metrics.resolution("version", "cache", pinned.isPresent(), 0);
+    else metrics.resolution("version", "metadata", pinned.isPresent(),
+      System.nanoTime() - start);
+    return pinned.map(v -> (DefaultArtifact) art.setVersion(v)).orElse(art);
+  }
+
+  private Optional<String> highestVersion(final DefaultArtifact art) {
+    try {
+      VersionRangeResult result = repoSystem.resolveVersionRange(session,
+        new VersionRangeRequest(art, remoteRepositories(art.getGroupId()), null));
+      if (!result.getExceptions().isEmpty()) failed(art, result.getExceptions());
+      return Optional.ofNullable(result.getHighestVersion()).map(Object::toString);
+    } catch (Exception ex) {
+      failed(art, ex);
+      return Optional.empty();
+    }
+  }
+
+  private Optional<String> snapshotVersion(final DefaultArtifact art) {
+    try {
+      VersionResult result = repoSystem.resolveVersion(session,
+        new VersionRequest(art, remoteRepositories(art.getGroupId()), null));
+      if (!result.getExceptions().isEmpty()) failed(art, result.getExceptions());
+      return Optional.ofNullable(result.getVersion());
+    } catch (Exception ex) {
+      failed(art, ex);
+      return Optional.empty();
+    }
   }
 
   private Optional<File> resolve(final DefaultArtifact art)  {
+    long start = System.nanoTime();
+    Span span = Flight.begin(Flight.RESOLVE, art.toString(), currentModule.get());
     try {
-      return Optional.ofNullable(repoSystem.resolveArtifact(session,
-        artifactRequest(art)).getArtifact().getFile());
+      ArtifactResult result = repoSystem.resolveArtifact(session,
+        artifactRequest(pinned(art)));
+      succeeded(art, Collections.singletonList(result), Collections.emptyList());
+      metrics.resolution(operation("resolve", art), repositoryOf(result),
+        result.isResolved(), System.nanoTime() - start);
+      Optional<File> file = Optional.ofNullable(result.getArtifact().getFile());
+      span.end(result.isResolved() ? "hit" : "miss", file.map(File::length).orElse(0L));
+      return file;
     } catch (Exception ex) {
+      failed(art, ex);
+      metrics.resolution(operation("resolve", art), "none", false,
+        System.nanoTime() - start);
+      span.end("miss", 0);
       return Optional.empty();
     }
   }
 
+  /**
+   * The repository that served the requested artifact itself, out of the
+   * results of a transitive resolution.
+   */
+  private static String repositoryOf(final DefaultArtifact art,
+      final List<ArtifactResult> results) {
+    return results.stream()
+      .filter(r -> r.getArtifact() != null &&
+        r.getArtifact().getGroupId().equals(art.getGroupId()) &&
+        r.getArtifact().getArtifactId().equals(art.getArtifactId()))
+      .findFirst().map(r -> repositoryOf(r)).orElse("none");
+  }
+
   private Set<File> resolveAll(final DefaultArtifact art) {
-    Dependency dependency = new Dependency(art, "compile");
+    Dependency dependency = new Dependency(pinned(art), "compile");
 
     CollectRequest collectRequest =
-      new CollectRequest(dependency, remoteRepositories());
+      new CollectRequest(dependency, remoteRepositories(art.getGroupId()));
 
     DependencyRequest dependencyRequest = new DependencyRequest();
     dependencyRequest.setCollectRequest(collectRequest);
 
+    long start = System.nanoTime();
+    Span span = Flight.begin(Flight.RESOLVE_ALL, art.toString(), currentModule.get());
+    String outcome = "hit";
     Set<File> dependencies;
     try {
-      dependencies = repoSystem.resolveDependencies(session, dependencyRequest)
-        .getArtifactResults().stream()
+      DependencyResult result =
+        repoSystem.resolveDependencies(session, dependencyRequest);
+      List<ArtifactResult> results = result.getArtifactResults();
+      succeeded(art, results, result.getCollectExceptions());
+      metrics.resolution(operation("resolveAll", art), repositoryOf(art, results),
+        true, System.nanoTime() - start);
+      dependencies = results.stream()
         .map(a -> a.getArtifact().getFile())
         .collect(toSet());
     } catch (DependencyResolutionException drex) {
-        dependencies = Optional.ofNullable(drex.getResult()).map(r -> {
-          return r.getArtifactResults().stream()
+        failed(art, drex);
+        List<ArtifactResult> results = Optional.ofNullable(drex.getResult())
+          .map(r -> r.getArtifactResults()).orElse(new ArrayList<>());
+        metrics.resolution(operation("resolveAll", art), repositoryOf(art, results),
+          false, System.nanoTime() - start);
+        outcome = results.isEmpty() ? "miss" : "partial";
+        dependencies = results.stream()
             .flatMap(a -> {
               return Optional.ofNullable(a.getArtifact()).map(f -> f.getFile())
                 .map(Stream::of).orElseGet(Stream::empty);
             })
             .collect(toSet());
-        }).orElse(new HashSet<>());
     }
 
-    return dependencies.stream()
+    Set<File> files = dependencies.stream()
       .filter(f -> !f.getName().endsWith(".pom")).collect(toSet());
+    span.end(outcome, files.stream().mapToLong(File::length).sum());
+    return files;
   }
 
   private Pair<Integer, Integer> partialVersion() {
@@ -268,7 +435,39 @@ final public class EnsimeConfigGenerator {
     }).orElse(ensimeServerArtifacts);
   }
 
+  private FileSet files(final Collection<File> files) {
+    return FileSet.of(paths, files);
+  }
+
+  /**
+   * The project with its file sets in this generation's path table.
+   */
+  private EnsimeProject interned(final EnsimeProject p) {
+    return new EnsimeProject(p.getId(), p.getDependsOn(), files(p.getSources()),
+      files(p.getTargets()), p.getScalacOptions(), p.getJavacOptions(),
+      files(p.getLibraryJars()), files(p.getLibrarySources()),
+      files(p.getLibraryDocs()));
+  }
+
+  /**
+   * The union of one file set of each project. A single project's set is
+   * shared as is rather than copied.
+   */
+  private static Set<File> union(final PathTable paths, final List<EnsimeProject> ps,
+      final Function<EnsimeProject, Set<File>> files) {
+    if (ps.size() == 1)
+      return FileSet.of(paths, files.apply(ps.get(0)));
+    else
+      return FileSet.of(paths,
+        ps.stream().flatMap(s -> files.apply(s).stream()).collect(toSet()));
+  }
+
   private EnsimeModule ensimeProjectsToModule(final List<EnsimeProject> p) {
+    return ensimeProjectsToModule(paths, p);
+  }
+
+  static EnsimeModule ensimeProjectsToModule(final PathTable paths,
+      final List<EnsimeProject> p) {
     String name = p.get(0).getId().getProject();
     Set<String> deps = p.stream()
       .flatMap(s -> s.getDependsOn().stream())
@@ -281,43 +480,40 @@ final public class EnsimeConfigGenerator {
     List<EnsimeProject> mains = partitioned.get(true);
     List<EnsimeProject> tests = partitioned.get(false);
 
-    Set<File> mainSources =
-      mains.stream().flatMap(s -> s.getSources().stream()).collect(toSet());
-
-    Set<File> mainTargets =
-      mains.stream().flatMap(s -> s.getTargets().stream()).collect(toSet());
+    Set<File> mainSources = union(paths, mains, EnsimeProject::getSources);
+    Set<File> mainTargets = union(paths, mains, EnsimeProject::getTargets);
+    Set<File> mainJars = union(paths, mains, EnsimeProject::getLibraryJars);
 
-    Set<File> mainJars =
-      mains.stream().flatMap(s -> s.getLibraryJars().stream()).collect(toSet());
+    Set<File> testSources = union(paths, tests, EnsimeProject::getSources);
+    Set<File> testTargets = union(paths, tests, EnsimeProject::getTargets);
+    Set<File> testJars = FileSet.of(paths, tests.stream()
+      .flatMap(s -> s.getLibraryJars().stream())
+      .filter(f -> !mainJars.contains(f))
+      .collect(toSet()));
 
-    Set<File> testSources =
-      tests.stream().flatMap(s -> s.getSources().stream()).collect(toSet());
-
-    Set<File> testTargets =
-      tests.stream().flatMap(s -> s.getTargets().stream()).collect(toSet());
-
-    Set<File> testJars =
-      tests.stream().flatMap(s -> s.getLibraryJars().stream()).collect(toSet());
-    testJars.removeAll(mainJars);
-
-    Set<File> sourceJars =
-      p.stream().flatMap(s -> s.getLibrarySources().stream()).collect(toSet());
-
-    Set<File> docJars =
-      p.stream().flatMap(s -> s.getLibraryDocs().stream()).collect(toSet());
+    Set<File> sourceJars = union(paths, p, EnsimeProject::getLibrarySources);
+    Set<File> docJars = union(paths, p, EnsimeProject::getLibraryDocs);
 
     return new EnsimeModule(
       name, mainSources, testSources, mainTargets,
-      testTargets, deps.stream().collect(toSet()), mainJars,
-      new HashSet(), testJars, sourceJars, docJars);
+      testTargets, deps, mainJars,
+      FileSet.EMPTY, testJars, sourceJars, docJars);
   }
 
+
   /**
    * Get the scala version for this project.
    *
    * @return String containing the scala version
    */
   private String getScalaVersion() {
+      Span span = Flight.begin(Flight.SCALA_VERSION, null, project.getArtifactId());
+      String version = metrics.time("scala-version", this::detectScalaVersion);
+      span.end(version, 0);
+      return version;
+  }
+
+  private String detectScalaVersion() {
 
       List<org.apache.maven.model.Dependency> directDependencies =
           project.getDependencies();
@@ -448,19 +644,14 @@ final public class EnsimeConfigGenerator {
    * @author amanjpro
    */
   private String getScalaOrganization() {
-    Map<String, Plugin> plugins = project.getPluginManagement()
-        .getPluginsAsMap();
-
-    Plugin scalacPlugin = plugins.get(SCALA_MAVEN_PLUGIN);
+    return settings(project).getScalaOrganization().orElse("org.scala-lang");
+  }
 
-    return Optional.ofNullable(scalacPlugin).map(s -> s.getConfiguration())
-      .flatMap( obj -> {
-        if(obj instanceof Xpp3Dom) {
-          Xpp3Dom config = (Xpp3Dom) obj;
-          return Optional.ofNullable(config.getChild("scalaOrganization"))
-            .map(ch -> ch.getValue());
-        } else return Optional.empty();
-      }).orElse("org.scala-lang");
+  /**
+   * The module's plugin configuration, read once per module.
+   */
+  private PluginSettings settings(final MavenProject module) {
+    return pluginSettings.computeIfAbsent(module, PluginSettings::of);
   }
 
   private Set<File> getScalaJars() {
@@ -468,14 +659,38 @@ final public class EnsimeConfigGenerator {
   }
 
 
-  private Set<File> getEnsimeServerJars() {
-    Set<File> resolvedEnsimeJars =
-      resolveEnsimeJars(getScalaOrganization(), ENSIME_SERVER_VERSION).stream()
+  /**
+   * The server jars, without the Scala jars, from the cross-project cache
+   * when all of its entries are still on disk.
+   */
+  private Set<File> resolveServerClasspath() {
+    String org = getScalaOrganization();
+    Pair<Integer, Integer> scalaVersion = partialVersion();
+    String scala = scalaVersion._1 + "." + scalaVersion._2;
+    Optional<Set<File>> cached = serverClasspathCache.get(org, scala,
+        ENSIME_SERVER_VERSION);
+    if (cached.isPresent()) {
+      metrics.resolution("server-classpath", "cache", true, 0);
+      return new HashSet<>(cached.get());
+    }
+
+    Set<File> resolved =
+      resolveEnsimeJars(org, ENSIME_SERVER_VERSION).stream()
         .filter ( f -> {
           String name = f.getName();
           return !(name.contains("scalap") || name.contains("scala-reflect") ||
             name.contains("scala-library") || name.contains("scala-compiler"));
         }).collect(toSet());
+    try {
+      serverClasspathCache.put(org, scala, ENSIME_SERVER_VERSION, resolved);
+    } catch (IOException e) {
+      log.debug("Unable to cache the ENSIME server classpath: " + e.getMessage());
+    }
+    return resolved;
+  }
+
+  private Set<File> getEnsimeServerJars() {
+    Set<File> resolvedEnsimeJars = resolveServerClasspath();
 
     File toolsJar = new File(getJavaHome().getAbsolutePath() + SP + "lib" + SP +
         "tools.jar");
@@ -526,30 +741,9 @@ final public class EnsimeConfigGenerator {
    * @author amanjpro
    */
   private List<String> getScalacOptions(final MavenProject project) {
-    Map<String, Plugin> plugins = project.getPluginManagement()
-        .getPluginsAsMap();
-
-    Plugin scalacPlugin = plugins.get(SCALA_MAVEN_PLUGIN);
-
-    Optional<List<String>> options =
-      Optional.ofNullable(scalacPlugin).map(s -> s.getConfiguration())
-        .flatMap( obj -> {
-          if(obj instanceof Xpp3Dom) {
-            Xpp3Dom config = (Xpp3Dom) obj;
-            return Optional.ofNullable(config.getChild("args"))
-              .map(ch -> Arrays.stream(ch.getChildren())
-                        .map(c -> c.getValue()).collect(toList()));
-          } else return Optional.empty();
-        });
-
-    if(options.isPresent()) {
-      List<String> providedOptions = options.get();
-      providedOptions.addAll(ensimeSuggestedOptions());
-      return providedOptions.stream().distinct().collect(toList());
-    } else {
-      return ensimeSuggestedOptions();
-    }
-
+    return Stream.concat(settings(project).getScalacArgs().stream(),
+        ensimeSuggestedOptions().stream())
+      .distinct().collect(toList());
   }
 
 
@@ -559,54 +753,14 @@ final public class EnsimeConfigGenerator {
    * @author amanjpro
    */
   private List<String> getJavacOptions(final MavenProject project) {
-    Map<String, Plugin> plugins = project.getPluginManagement()
-        .getPluginsAsMap();
-
-    Plugin javacPlugin = plugins.get(JAVA_MAVEN_PLUGIN);
-
-    Plugin scalacPlugin = plugins.get(SCALA_MAVEN_PLUGIN);
-
-    Optional<List<String>> javacOptions =
-      Optional.ofNullable(javacPlugin).map(p -> p.getConfiguration()).flatMap(obj -> {
-      if(obj instanceof Xpp3Dom) {
-        Xpp3Dom config = (Xpp3Dom) obj;
-        return Optional.ofNullable(config.getChild("compilerArgs"))
-          .map(s -> Arrays.stream(s.getChildren()).map(v -> v.getValue())
-                    .collect(toList()));
-      } else return Optional.empty();
-    });
-
-    Optional<List<String>> jvmOptions =
-      Optional.ofNullable(scalacPlugin).map(p -> p.getConfiguration()).flatMap (obj -> {
-      if(obj instanceof Xpp3Dom) {
-        Xpp3Dom config = (Xpp3Dom) obj;
-        return Optional.ofNullable(config.getChild("jvmArgs"))
-          .map(s -> Arrays.stream(s.getChildren()).map(v -> v.getValue())
-                    .collect(toList()));
-      } else return Optional.empty();
-    });
-
-    List<String> options = new ArrayList();
-    javacOptions.ifPresent(opts -> options.addAll(opts));
-    jvmOptions.ifPresent(opts -> options.addAll(opts));
+    PluginSettings settings = settings(project);
+    List<String> options = new ArrayList<>(settings.getCompilerArgs());
+    options.addAll(settings.getJvmArgs());
     return options;
   }
 
   private List<String> getSources(final MavenProject module, final String target) {
-    Map<String, Plugin> plugins = project.getPluginManagement()
-        .getPluginsAsMap();
-
-    Plugin scalacPlugin = plugins.get(SCALA_MAVEN_PLUGIN);
-
-    List<String> sources   = Optional.ofNullable(scalacPlugin).map(p -> p.getConfiguration())
-      .flatMap(obj -> {
-        if(obj instanceof Xpp3Dom) {
-          Xpp3Dom config = (Xpp3Dom) obj;
-          return Optional.ofNullable(config.getChild("sources"))
-            .map(c -> Arrays.stream(c.getChildren())
-                      .map(v -> v.getValue()).collect(toList()));
-        } else return Optional.empty();
-      }).orElse(new ArrayList());
+    List<String> sources = new ArrayList<>(settings(module).getSources());
 
     if(sources.isEmpty()) {
       sources = Stream.of(
@@ -622,61 +776,88 @@ final public class EnsimeConfigGenerator {
   }
 
   private List<EnsimeProject> getEnsimeProjects() {
+    return modules.stream().map(this::getEnsimeProject).collect(toList());
+  }
 
-    return modules.stream().map ( project -> {
-      EnsimeProjectId projectId =
-        new EnsimeProjectId(project.getArtifactId(),
-            Optional.ofNullable(project.getDefaultGoal()).orElse("compile"));
-
-      Set<Artifact> dependencyArtifacts = project.getDependencyArtifacts();
-
-      // Get project dependencies (maven subprojects) of this maven project --
-      // don't include this project as a dependency of itself
-      List<MavenProject> collectedProjects = project.getCollectedProjects();
-      List<EnsimeProjectId> depends = collectedProjects.stream()
-        .filter(p -> !p.getPackaging().equals("pom"))
-        .filter(p -> !p.getArtifactId().equals(project.getArtifactId()))
-        .map(p -> new EnsimeProjectId(p.getArtifactId(), "compile"))
-        .collect(toList());
+  /**
+   * The coordinates of a module's direct dependencies. Projects re-read from
+   * disk by the watch goal have no resolved dependency artifacts, so their
+   * declared dependencies are used instead.
+   */
+  private Set<DefaultArtifact> dependencyCoordinates(final MavenProject project,
+      final String classifier) {
+    Set<Artifact> dependencyArtifacts = project.getDependencyArtifacts();
+    if (dependencyArtifacts != null) {
+      return dependencyArtifacts.stream().map(art ->
+        new DefaultArtifact(art.getGroupId(), art.getArtifactId(), classifier,
+          "jar", art.getVersion())).collect(toSet());
+    } else {
+      List<org.apache.maven.model.Dependency> declared = project.getDependencies();
+      return declared.stream().map(dep ->
+        new DefaultArtifact(dep.getGroupId(), dep.getArtifactId(), classifier,
+          "jar", dep.getVersion())).collect(toSet());
+    }
+  }
 
-      List<String> compileSources = new ArrayList();
-      compileSources.addAll(getSources(project, "main"));
-      compileSources.addAll(getSources(project, "test"));
+  private EnsimeProject getEnsimeProject(final MavenProject project) {
+    long start = System.nanoTime();
+    currentModule.set(project.getArtifactId());
+    try {
+      return toEnsimeProject(project);
+    } finally {
+      currentModule.remove();
+      metrics.module(project.getArtifactId(), System.nanoTime() - start);
+    }
+  }
 
-      Set<File> compileFiles = compileSources.stream()
-        .map(s -> new File(s))
-        .filter(f -> f.exists())
-        .collect(toSet());
+  private EnsimeProject toEnsimeProject(final MavenProject project) {
+    EnsimeProjectId projectId =
+      new EnsimeProjectId(project.getArtifactId(),
+          Optional.ofNullable(project.getDefaultGoal()).orElse("compile"));
+
+    // Get project dependencies (maven subprojects) of this maven project --
+    // don't include this project as a dependency of itself
+    List<MavenProject> collectedProjects = project.getCollectedProjects();
+    List<EnsimeProjectId> depends = collectedProjects.stream()
+      .filter(p -> !p.getPackaging().equals("pom"))
+      .filter(p -> !p.getArtifactId().equals(project.getArtifactId()))
+      .map(p -> new EnsimeProjectId(p.getArtifactId(), "compile"))
+      .collect(toList());
+
+    List<String> compileSources = new ArrayList();
+    compileSources.addAll(getSources(project, "main"));
+    compileSources.addAll(getSources(project, "test"));
+
+    Set<File> compileFiles = compileSources.stream()
+      .map(s -> new File(s))
+      .filter(f -> f.exists())
+      .collect(toSet());
 
-      Set<File> targets = Stream.of(
-          new File(project.getBuild().getOutputDirectory())).collect(toSet());
+    Set<File> targets = Stream.of(
+        new File(project.getBuild().getOutputDirectory())).collect(toSet());
 
-      List<String> scalacOptions = getScalacOptions(project);
-      List<String> javacOptions = getJavacOptions(project);
+    List<String> scalacOptions = getScalacOptions(project);
+    List<String> javacOptions = getJavacOptions(project);
 
-      // Several of our file-sets hard-code the extension as "jar". Ensure this is true.
-      Predicate<File> isJar = f -> f.getName().endsWith(".jar");
+    // Several of our file-sets hard-code the extension as "jar". Ensure this is true.
+    Predicate<File> isJar = f -> f.getName().endsWith(".jar");
 
-      Set<File> libraryJars = dependencyArtifacts.stream().flatMap ( art ->
-        resolveAll(new DefaultArtifact(art.getGroupId(),
-          art.getArtifactId(), "jar", art.getVersion())).stream()
-      ).filter(isJar).collect(toSet());
+    Set<File> libraryJars = dependencyCoordinates(project, "").stream()
+      .flatMap(art -> resolveAll(art).stream())
+      .filter(isJar).collect(toSet());
 
-      Set<File> librarySources = dependencyArtifacts.stream().flatMap ( art ->
-        resolveAll(new DefaultArtifact(art.getGroupId(),
-          art.getArtifactId(), "sources", "jar", art.getVersion())).stream()
-      ).filter(isJar).collect(toSet());
+    Set<File> librarySources = dependencyCoordinates(project, "sources").stream()
+      .flatMap(art -> resolveAll(art).stream())
+      .filter(isJar).collect(toSet());
 
-      Set<File> libraryDocs = dependencyArtifacts.stream().flatMap ( art ->
-        resolveAll(new DefaultArtifact(art.getGroupId(),
-          art.getArtifactId(), "javadoc", "jar", art.getVersion())).stream()
-      ).filter(isJar).collect(toSet());
+    Set<File> libraryDocs = dependencyCoordinates(project, "javadoc").stream()
+      .flatMap(art -> resolveAll(art).stream())
+      .filter(isJar).collect(toSet());
 
-      return new EnsimeProject(projectId, depends, compileFiles,
-        targets, scalacOptions, javacOptions,
-        libraryJars, librarySources,
-        libraryDocs);
-    }).collect(toList());
+    return new EnsimeProject(projectId, depends, files(compileFiles),
+      files(targets), scalacOptions, javacOptions,
+      files(libraryJars), files(librarySources),
+      files(libraryDocs));
   }
 
   private void write(final String content, final File out) {
@@ -686,16 +867,25 @@ final public class EnsimeConfigGenerator {
   }
 
   protected EnsimeConfig generateConfig() {
+    paths = new PathTable();
+    return generateConfig(metrics.time("projects", this::getEnsimeProjects));
+  }
+
+  /**
+   * Assembles a configuration around projects that were already generated,
+   * e.g. per module by the fragment goal.
+   */
+  protected EnsimeConfig generateConfig(final List<EnsimeProject> projects) {
+    List<EnsimeProject> subProjects =
+      projects.stream().map(this::interned).collect(toList());
     String projectDir = project.getBasedir().toPath().toAbsolutePath().toString();
 
     File cacheDir = new File(projectDir + SP + ".ensime_cache");
 
-    List<EnsimeProject> subProjects = getEnsimeProjects();
-
-    Map<String, EnsimeModule> modules =
+    Map<String, EnsimeModule> modules = metrics.time("modules", () ->
         subProjects.stream().collect(groupingBy(s -> s.getId().getProject()))
             .entrySet().stream()
-            .collect(toMap(Map.Entry::getKey, p -> ensimeProjectsToModule(p.getValue())));
+            .collect(toMap(Map.Entry::getKey, p -> ensimeProjectsToModule(p.getValue()))));
 
     File javaSrcFile = new File(getJavaHome().getAbsolutePath() + SP + "src.zip");
     Set<File> javaSrc = new HashSet<>();
@@ -705,19 +895,222 @@ final public class EnsimeConfigGenerator {
     }
 
     EnsimeConfig config = new EnsimeConfig(project.getBasedir(), cacheDir,
-        getScalaJars(), getEnsimeServerJars(), ENSIME_SERVER_VERSION, project.getName(),
+        files(metrics.time("scala-jars", this::getScalaJars)),
+        files(metrics.time("server-jars", this::getEnsimeServerJars)),
+        ENSIME_SERVER_VERSION, project.getName(),
         getScalaVersion(),
         ensimeSuggestedOptions(), modules, getJavaHome(),
         getEnsimeJavaFlags(), getJavacOptions(project),
-        javaSrc, subProjects);
+        files(javaSrc), subProjects);
     return config;
   }
 
+  /**
+   * Recomputes the projects of the given modules only, keeping the others
+   * from a previous generation. The kept projects move to a new path table,
+   * so the previous generation's table is not held on to.
+   */
+  protected EnsimeConfig regenerateConfig(final EnsimeConfig previous,
+      final List<MavenProject> changed) {
+    Set<String> names = changed.stream()
+      .map(MavenProject::getArtifactId).collect(toSet());
+    pluginSettings.keySet().removeIf(p -> names.contains(p.getArtifactId()));
+    paths = new PathTable();
+
+    List<EnsimeProject> subProjects = previous.getProjects().stream()
+      .filter(p -> !names.contains(p.getId().getProject()))
+      .map(this::interned)
+      .collect(toList());
+    changed.stream()
+      .filter(p -> !p.getPackaging().equals("pom"))
+      .map(this::getEnsimeProject)
+      .forEach(subProjects::add);
+
+    Map<String, EnsimeModule> modules = new HashMap<>();
+    subProjects.stream()
+      .collect(groupingBy(s -> s.getId().getProject()))
+      .forEach((name, ps) -> modules.put(name, ensimeProjectsToModule(ps)));
+
+    return new EnsimeConfig(previous.getRoot(), previous.getCacheDir(),
+        files(previous.getScalaCompilerJars()), files(previous.getEnsimeServerJars()),
+        previous.getEnsimeServerVersion(), previous.getName(),
+        previous.getScalaVersion(), previous.getScalacOptions(), modules,
+        previous.getJavaHome(), previous.getJavaFlags(),
+        previous.getJavacOptions(), files(previous.getJavaSrc()), subProjects);
+  }
+
+  /**
+   * Writes a configuration.
+   */
+  public void write(final EnsimeConfig config, final File out) {
+    String content = metrics.time("format", () ->
+        SExpFormatter.toSExp(config, sections).replaceAll("\r\n", "\n") + "\n");
+    metrics.time("write", () -> {
+      write(content, out);
+      return out;
+    });
+  }
+
   /**
    * Generates configurations.
+   *
+   * @return the configuration that was written
+   */
+  public EnsimeConfig generate(final File out) {
+    EnsimeConfig config = generateConfig();
+    write(config, out);
+    return config;
+  }
+
+  /**
+   * Generates configurations one module at a time: each module is resolved,
+   * converted and written before the next one, and its file sets are
+   * dropped right after. The path table is kept for the whole run, so it
+   * only grows with the distinct paths of the reactor, and a module's sets
+   * share segments with those of the modules written before it. The output
+   * is the same as generate's.
+   *
+   * @return the configuration that was written, without its modules and
+   *         projects
+   */
+  public EnsimeConfig generateStreaming(final File out) throws IOException {
+    paths = new PathTable();
+    EnsimeConfig header = generateConfig(Collections.emptyList());
+    // modules are written in name order, the order of :subprojects
+    Map<String, List<MavenProject>> byName = modules.stream()
+      .collect(groupingBy(MavenProject::getArtifactId, TreeMap::new, toList()));
+
+    long start = System.nanoTime();
+    try {
+      AtomicFiles.write(out.toPath(), staging -> {
+        try (SExpStreamWriter writer = new SExpStreamWriter(
+               Files.newBufferedWriter(staging, StandardCharsets.UTF_8), header, sections)) {
+          for (List<MavenProject> group : byName.values()) {
+            List<EnsimeProject> projects =
+              group.stream().map(this::getEnsimeProject).collect(toList());
+            if (sections.subprojects()) writer.module(ensimeProjectsToModule(projects));
+            for (EnsimeProject p : projects) writer.project(p);
+          }
+        }
+      });
+    } finally {
+      metrics.phase("stream", System.nanoTime() - start);
+    }
+    return header;
+  }
+
+
+  /**
+   * Generates one module of the reactor, for modules the merge goal found
+   * no fragment for.
+   */
+  protected EnsimeProject generateProject(final MavenProject module) {
+    return getEnsimeProject(module);
+  }
+
+  /**
+   * The project of this generator's own module only, for the fragment goal.
+   */
+  public ProjectFragment generateFragment() {
+    return new ProjectFragment(getEnsimeProject(project), getScalaVersion(),
+      Optional.of(ProjectFragment.inputs(project)));
+  }
+
+  /**
+   * Every coordinate generation resolves: each module's dependencies with
+   * their sources and javadoc, the ENSIME server and the Scala toolchain.
    */
-  public void generate(final File out) {
-    write(SExpFormatter.toSExp(generateConfig()).replaceAll("\r\n", "\n") + "\n", out);
+  private List<DefaultArtifact> prefetchCoordinates() {
+    Pair<Integer, Integer> scalaVersion = partialVersion();
+    String scala = scalaVersion._1 + "." + scalaVersion._2;
+    Stream<DefaultArtifact> dependencies = modules.stream()
+      .flatMap(m -> Stream.of("", "sources", "javadoc")
+        .flatMap(c -> dependencyCoordinates(m, c).stream()));
+    Stream<DefaultArtifact> toolchain = Stream.concat(
+      Stream.of(artifact("org.ensime", "server_" + scala, ENSIME_SERVER_VERSION)),
+      Stream.of("scalap", "scala-compiler", "scala-library", "scala-reflect")
+        .map(a -> artifact(getScalaOrganization(), a, getScalaVersion())));
+    return Stream.concat(dependencies, toolchain).distinct().collect(toList());
+  }
+
+  /**
+   * Resolves everything a generation would, on at most the given number of
+   * threads, without writing any configuration.
+   *
+   * @return the files resolved
+   */
+  public Set<File> prefetch(final int threads) throws InterruptedException {
+    List<DefaultArtifact> coordinates = metrics.time("coordinates",
+        this::prefetchCoordinates);
+    long start = System.nanoTime();
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      return pool.submit(() -> coordinates.parallelStream()
+        .flatMap(art -> resolveAll(art).stream())
+        .collect(toSet())).get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      pool.shutdownNow();
+      metrics.phase("prefetch", System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Bounds connecting to a repository and each read from it, not a whole
+   * transfer. 0 keeps Maven's own timeouts.
+   */
+  public void setReadTimeout(final int millis) {
+    if (millis <= 0 || session == null) return;
+    DefaultRepositorySystemSession timed = new DefaultRepositorySystemSession(session);
+    timed.setConfigProperty(ConfigurationProperties.CONNECT_TIMEOUT, millis);
+    timed.setConfigProperty(ConfigurationProperties.REQUEST_TIMEOUT, millis);
+    session = timed;
+  }
+
+  /**
+   * Skips repositories after this many consecutive failed transfers. 0
+   * never skips.
+   */
+  public void setMaxRepositoryFailures(final int maxFailures) {
+    this.health = new RepositoryHealth(maxFailures);
+  }
+
+  public RepositoryHealth getRepositoryHealth() {
+    return health;
+  }
+
+  /**
+   * Where the versions of ranges and SNAPSHOTs are remembered.
+   */
+  public void setVersionCache(final VersionCache versions) {
+    this.versions = versions;
+  }
+
+  /**
+   * Where the repository that served each groupId is remembered.
+   */
+  public void setRepositoryRoutes(final RepositoryRoutes routes) {
+    this.routes = routes;
+  }
+
+  /**
+   * Where resolved ENSIME server classpaths are shared between projects.
+   */
+  public void setServerClasspathCache(final ServerClasspathCache cache) {
+    this.serverClasspathCache = cache;
+  }
+
+  /**
+   * Overrides the module sections picked from the server version.
+   */
+  public void setSections(final Sections sections) {
+    this.sections = sections;
+  }
+
+
+  public GenerationMetrics getMetrics() {
+    return metrics;
   }
 
 
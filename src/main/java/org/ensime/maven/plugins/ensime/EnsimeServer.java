@@ -0,0 +1,309 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.ensime.maven.plugins.ensime.model.EnsimeConfig;
+
+/**
+ * Command line and process bookkeeping for the ENSIME server JVMs started by
+ * the serverIndex, start, stop and status goals.
+ */
+final public class EnsimeServer {
+
+  public static final String MAIN_CLASS = "org.ensime.server.Server";
+
+  /**
+   * Records the resident server's pid and port, next to the "http" and
+   * "port" files the server writes itself.
+   */
+  public static final String DAEMON_FILE = "daemon.properties";
+  public static final String DAEMON_LOG = "server.log";
+
+  /**
+   * Top-level entries of the cache directory that hold the server's index:
+   * the Lucene index and the H2 database, with or without the version
+   * suffix some server releases add. Everything else there either describes
+   * a running server or was written by this plugin for one checkout only.
+   */
+  private static final List<String> INDEX_PREFIXES = Arrays.asList("index", "sql");
+
+  public static boolean isIndexFile(Path relative) {
+    if (relative.getNameCount() == 0) return false;
+    String top = relative.getName(0).toString();
+    return INDEX_PREFIXES.stream().anyMatch(top::startsWith);
+  }
+
+  /**
+   * Written to the cache directory by serverIndex when the server finished
+   * indexing it, with the time the run started.
+   */
+  public static final String INDEXED_FILE = "last-indexed";
+
+  /**
+   * When the last successful index run of the cache directory started, if
+   * its index is still there.
+   */
+  public static Optional<Long> indexedAt(final File cacheDir) {
+    String[] children = cacheDir.list();
+    if (children == null || !Stream.of(children).anyMatch(n -> isIndexFile(Paths.get(n)))) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(Long.parseLong(new String(Files.readAllBytes(
+        new File(cacheDir, INDEXED_FILE).toPath()), StandardCharsets.UTF_8).trim()));
+    } catch (IOException | NumberFormatException e) {
+      return Optional.empty();
+    }
+  }
+
+  private EnsimeServer() {}
+
+  /**
+   * Maintains the same behavior as the sbt ensime maven plugin's "orderFiles" method.
+   */
+  public static List<File> orderJars(List<File> jars) {
+    Map<Boolean, List<File>> partitioned = jars.stream()
+        .sorted(Comparator.comparing(file -> file.getName() + file.getPath()))
+        .collect(Collectors.partitioningBy(o -> o.getName().contains("monkey")));
+    List<File> orderedJars = new ArrayList<>();
+    List<File> monkeyJars = partitioned.get(true);
+    if (monkeyJars != null) {
+      orderedJars.addAll(monkeyJars);
+    }
+    List<File> humanJars = partitioned.get(false);
+    if (humanJars != null) {
+      orderedJars.addAll(humanJars);
+    }
+    return orderedJars;
+  }
+
+  public static List<File> classpath(EnsimeConfig config) {
+    List<File> classPathJars = new ArrayList<>();
+    classPathJars.addAll(config.getEnsimeServerJars());
+    classPathJars.addAll(config.getScalaCompilerJars());
+    classPathJars.add(new File(String.format("%s/lib/tools.jar", config.getJavaHome())));
+    return classPathJars;
+  }
+
+  public static List<String> jvmFlags(EnsimeConfig config, File dotEnsime) {
+    List<String> jvmFlags = new ArrayList<>();
+    jvmFlags.add("-Xms4g");
+    jvmFlags.add("-Xmx4g");
+    jvmFlags.add("-XX:StringTableSize=1000003");
+    jvmFlags.add("-XX:+UnlockExperimentalVMOptions");
+    jvmFlags.add("-XX:SymbolTableSize=1000003");
+    jvmFlags.add("-Densime.config=" + dotEnsime.getPath());
+    jvmFlags.addAll(config.getJavaFlags());
+    return jvmFlags;
+  }
+
+  public static List<String> command(EnsimeConfig config, List<String> jvmFlags) {
+    List<String> fullCommand = new ArrayList<>();
+    fullCommand.add(String.format("%s/bin/java", config.getJavaHome()));
+    // JVM flags
+    fullCommand.addAll(jvmFlags);
+    // Class path
+    fullCommand.add("-cp");
+    fullCommand.add(orderJars(classpath(config))
+        .stream()
+        .map(File::getPath)
+        .collect(Collectors.joining(":"))
+    );
+    // Main class
+    fullCommand.add(MAIN_CLASS);
+    return fullCommand;
+  }
+
+  /**
+   * The pid of a child process. Uses Process.pid() where available and the
+   * pid field of the Java 8 UNIXProcess otherwise.
+   */
+  public static Optional<Long> pid(Process process) {
+    try {
+      return Optional.of((Long) Process.class.getMethod("pid").invoke(process));
+    } catch (ReflectiveOperationException e) {
+      try {
+        Field field = process.getClass().getDeclaredField("pid");
+        field.setAccessible(true);
+        return Optional.of(field.getLong(process));
+      } catch (ReflectiveOperationException | RuntimeException ex) {
+        return Optional.empty();
+      }
+    }
+  }
+
+  private static boolean signal(long pid, String signal) {
+    try {
+      return new ProcessBuilder("kill", signal, Long.toString(pid))
+          .redirectErrorStream(true)
+          .redirectOutput(ProcessBuilder.Redirect.appendTo(new File("/dev/null")))
+          .start()
+          .waitFor() == 0;
+    } catch (IOException e) {
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * The command line of a running process, from /proc where there is one
+   * and from ps otherwise.
+   */
+  static Optional<String> commandLine(long pid) {
+    File proc = new File("/proc/" + pid + "/cmdline");
+    if (new File("/proc/self").exists()) {
+      try {
+        return Optional.of(new String(Files.readAllBytes(proc.toPath()),
+            StandardCharsets.UTF_8).replace('\0', ' '));
+      } catch (IOException e) {
+        return Optional.empty();
+      }
+    }
+    try {
+      Process ps = new ProcessBuilder("ps", "-o", "args=", "-p", Long.toString(pid))
+          .redirectErrorStream(true)
+          .start();
+      String output;
+      try (InputStream in = ps.getInputStream()) {
+        output = new String(readAll(in), StandardCharsets.UTF_8).trim();
+      }
+      return ps.waitFor() == 0 && !output.isEmpty() ? Optional.of(output) : Optional.empty();
+    } catch (IOException e) {
+      return Optional.empty();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Optional.empty();
+    }
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Whether the pid still belongs to an ENSIME server, rather than having
+   * exited or been reused by an unrelated process.
+   */
+  public static boolean isServer(long pid) {
+    return commandLine(pid).map(args -> args.contains(MAIN_CLASS)).orElse(false);
+  }
+
+  /**
+   * Stops a server, first with TERM and with KILL when it is still there
+   * after the grace period. Does nothing to a pid that is not a server.
+   *
+   * @return true when no server is left running under the pid
+   */
+  public static boolean stop(long pid, long graceSeconds) {
+    if (!isServer(pid)) return true;
+    signal(pid, "-TERM");
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(graceSeconds);
+    while (isServer(pid) && System.nanoTime() < deadline) {
+      try {
+        Thread.sleep(250);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    return !isServer(pid) || signal(pid, "-KILL");
+  }
+
+  public static boolean isListening(int port) {
+    try (Socket socket = new Socket()) {
+      socket.connect(new InetSocketAddress("127.0.0.1", port), 1000);
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * The port the server announced in its cache directory, if it has started
+   * listening yet.
+   */
+  public static Optional<Integer> announcedPort(File cacheDir) {
+    for (String name : Arrays.asList("http", "port")) {
+      File file = new File(cacheDir, name);
+      if (file.isFile()) {
+        try {
+          String content = new String(Files.readAllBytes(file.toPath()),
+              StandardCharsets.UTF_8).trim();
+          return Optional.of(Integer.parseInt(content));
+        } catch (IOException | NumberFormatException e) {
+          // the server is still writing it
+        }
+      }
+    }
+    return Optional.empty();
+  }
+
+  public static Properties readDaemon(File cacheDir) {
+    Properties daemon = new Properties();
+    File file = new File(cacheDir, DAEMON_FILE);
+    if (file.isFile()) {
+      try (InputStream in = new FileInputStream(file)) {
+        daemon.load(in);
+      } catch (IOException e) {
+        daemon.clear();
+      }
+    }
+    return daemon;
+  }
+
+  public static void writeDaemon(File cacheDir, Properties daemon) throws IOException {
+    try (OutputStream out = new FileOutputStream(new File(cacheDir, DAEMON_FILE))) {
+      daemon.store(out, "ENSIME server started by ensime:start");
+    }
+  }
+
+  public static void clearDaemon(File cacheDir) {
+    new File(cacheDir, DAEMON_FILE).delete();
+  }
+}
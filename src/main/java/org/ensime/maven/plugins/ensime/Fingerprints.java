@@ -0,0 +1,167 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
+import org.ensime.maven.plugins.ensime.formatter.JsonFormatter;
+import org.ensime.maven.plugins.ensime.model.EnsimeConfig;
+
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Content fingerprints of the files a configuration refers to, kept in
+ * .ensime_cache/fingerprints.properties, to tell which jars really changed
+ * between runs.
+ *
+ * A fingerprint is the file's CRC-32 and Adler-32, read through memory
+ * mapped chunks. Files whose size and mtime did not change keep their
+ * stored fingerprint without being read.
+ */
+final public class Fingerprints {
+
+  public static final String FILE_NAME = "fingerprints.properties";
+  public static final String REPORT_NAME = "fingerprints.json";
+
+  private static final int CHUNK = 64 * 1024 * 1024;
+
+  private final StampCache cache;
+
+  public Fingerprints(final File store) {
+    this.cache = new StampCache(store);
+  }
+
+  /**
+   * The files added, removed and changed since the fingerprints were last
+   * saved.
+   */
+  final public static class Report {
+    private final Set<String> added = new TreeSet<>();
+    private final Set<String> removed = new TreeSet<>();
+    private final Set<String> changed = new TreeSet<>();
+
+    public Set<String> getAdded() { return added; }
+    public Set<String> getRemoved() { return removed; }
+    public Set<String> getChanged() { return changed; }
+
+    public boolean isEmpty() {
+      return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    public String summary() {
+      return String.format("Classpath: %d added, %d removed, %d changed",
+        added.size(), removed.size(), changed.size());
+    }
+
+    public String toJson() {
+      Map<String, Object> json = new LinkedHashMap<>();
+      json.put("added", added);
+      json.put("removed", removed);
+      json.put("changed", changed);
+      return JsonFormatter.toJson(json);
+    }
+
+    public void write(final File out) throws IOException {
+      Files.createDirectories(out.getAbsoluteFile().getParentFile().toPath());
+      try (PrintWriter writer = new PrintWriter(out, "UTF-8")) {
+        writer.write(toJson() + "\n");
+      }
+    }
+  }
+
+  /**
+   * Every regular file the configuration refers to: the jars of each module,
+   * the Scala compiler and ENSIME server jars, and the JDK sources.
+   */
+  public static Set<File> files(final EnsimeConfig config) {
+    Stream<File> modules = config.getModules().values().stream()
+      .flatMap(m -> Stream.of(m.getCompileJars(), m.getRuntimeJars(), m.getTestJars(),
+        m.getSourceJars(), m.getDocJars()).flatMap(Set::stream));
+    Stream<File> toolchain = Stream.of(config.getScalaCompilerJars(),
+      config.getEnsimeServerJars(), config.getJavaSrc()).flatMap(Set::stream);
+    return Stream.concat(modules, toolchain).filter(File::isFile).collect(toSet());
+  }
+
+  /**
+   * The fingerprint of a file's content.
+   */
+  static String fingerprint(final File file) throws IOException {
+    CRC32 crc = new CRC32();
+    Adler32 adler = new Adler32();
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      for (long pos = 0; pos < size; pos += CHUNK) {
+        MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+          pos, Math.min(CHUNK, size - pos));
+        crc.update(chunk.duplicate());
+        adler.update(chunk);
+      }
+    }
+    return String.format("%08x%08x", crc.getValue(), adler.getValue());
+  }
+
+  private void record(final File file) {
+    if (cache.get(file).isPresent()) return;
+    try {
+      cache.put(file, fingerprint(file));
+    } catch (IOException e) {
+      // left out, and reported as removed if it was there before
+    }
+  }
+
+  /**
+   * Fingerprints the files on at most the given number of threads and
+   * compares them with the stored fingerprints.
+   */
+  public Report update(final Collection<File> files, final int threads)
+      throws InterruptedException {
+    StampCache.forEach(files, threads, this::record);
+
+    Map<String, String> stored = cache.stored();
+    Map<String, String> current = cache.current();
+    Report report = new Report();
+    current.forEach((path, fingerprint) -> {
+      String previous = stored.get(path);
+      if (previous == null) report.added.add(path);
+      else if (!previous.equals(fingerprint)) report.changed.add(path);
+    });
+    stored.keySet().stream()
+      .filter(path -> !current.containsKey(path))
+      .forEach(report.removed::add);
+    return report;
+  }
+
+  /**
+   * Replaces the stored fingerprints with the ones of the last update.
+   */
+  public void save() throws IOException {
+    cache.save("Content fingerprints: size, mtime, CRC-32 and Adler-32");
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.apache.maven.plugins.annotations.Component;
+
+/**
+ * Generates the ENSIME project of a single module into its target/, to be
+ * assembled into .ensime by the merge goal.
+ *
+ * Unlike generate this runs once per module, so a parallel build (-T)
+ * resolves modules concurrently and a -pl build only refreshes the selected
+ * modules.
+ */
+@Mojo(name = "fragment", requiresProject = true, threadSafe = true,
+      requiresDependencyResolution = ResolutionScope.TEST)
+final public class FragmentMojo extends AbstractResolveMojo {
+
+  @Parameter(defaultValue = "${project}", readonly = true)
+  protected MavenProject project;
+
+  @Parameter(defaultValue = "${repositorySystemSession}", readonly = true)
+  private RepositorySystemSession session;
+
+  @Component
+  private RepositorySystem repoSystem;
+
+  /**
+   * Skip the operation when true.
+   */
+  @Parameter(property = "ensime.skip", defaultValue = "false")
+  protected boolean skip;
+
+  /**
+   * ENSIME server
+   */
+  @Parameter(property = "ensime.server.version",
+              defaultValue = "2.0.0-M4")
+  protected String ensimeServerVersion;
+
+  /**
+   * Ensime Scala version
+   */
+  @Parameter(property = "ensime.scala.version")
+  protected String ensimeScalaVersion;
+
+  @Override
+  public void execute() throws MojoExecutionException {
+    if(skip || project.getPackaging().equals("pom")) {
+      return;
+    }
+    EnsimeConfigGenerator generator = new EnsimeConfigGenerator(project,
+        repoSystem, session, new Properties(), ensimeServerVersion,
+        ensimeScalaVersion, getLog());
+    configure(generator);
+    File out = new File(project.getBuild().getDirectory(), ProjectFragment.FILE_NAME);
+    try {
+      generator.generateFragment().write(out);
+    } catch(IOException e) {
+      throw new MojoExecutionException("Unable to write " + out, e);
+    }
+    getLog().info("Wrote " + out);
+    finish(generator);
+  }
+}
@@ -19,9 +19,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Optional;
 import java.util.Properties;
 
-import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Component;
@@ -31,6 +31,8 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 import org.eclipse.aether.RepositorySystemSession;
 import org.eclipse.aether.RepositorySystem;
+import org.ensime.maven.plugins.ensime.formatter.SExpFormatter.Sections;
+import org.ensime.maven.plugins.ensime.model.EnsimeConfig;
 
 /**
  * Generates ENSIME configuration files.
@@ -39,7 +41,7 @@ import org.eclipse.aether.RepositorySystem;
  */
 @Mojo(name = "generate", requiresProject = true,
       requiresDependencyResolution = ResolutionScope.TEST, aggregator = true)
-final public class GenerateMojo extends AbstractMojo {
+final public class GenerateMojo extends AbstractResolveMojo {
 
   public static final String DOT_ENSIME = ".ensime";
 
@@ -84,6 +86,67 @@ final public class GenerateMojo extends AbstractMojo {
   @Parameter(property = "ensime.scala.version")
   protected String ensimeScalaVersion;
 
+  /**
+   * Metrics output format
+   *
+   * Either "json" or "openmetrics". When set, the generation metrics are
+   * also written to target/ensime-metrics.json or target/ensime-metrics.txt.
+   */
+  @Parameter(property = "ensime.metrics")
+  protected String metricsFormat;
+
+  /**
+   * Module sections to write
+   *
+   * One of "projects" (read by ENSIME 2.x), "subprojects" (read by 1.x),
+   * "all", or "auto" to pick from ensime.server.version.
+   */
+  @Parameter(property = "ensime.config.sections", defaultValue = "auto")
+  protected String sections;
+
+  /**
+   * Streaming generation
+   *
+   * When true, each module is written to .ensime as soon as it has been
+   * resolved and is released right after, which keeps memory flat on very
+   * large reactors. The package index, fingerprints and configuration diff
+   * need every module at once and are skipped.
+   */
+  @Parameter(property = "ensime.streaming", defaultValue = "false")
+  protected boolean streaming;
+
+  /**
+   * Package index
+   *
+   * When true, the packages provided by each module's jars are also written
+   * to .ensime_cache/package-index.json.
+   */
+  @Parameter(property = "ensime.packageIndex", defaultValue = "false")
+  protected boolean packageIndex;
+
+  /**
+   * Fingerprints
+   *
+   * When true, the content of every file the configuration refers to is
+   * fingerprinted into .ensime_cache, and the files added, removed or
+   * changed since the last run are reported in
+   * .ensime_cache/fingerprints.json.
+   */
+  @Parameter(property = "ensime.fingerprints", defaultValue = "false")
+  protected boolean fingerprints;
+
+  /**
+   * Configuration diff
+   *
+   * When true, the new configuration is compared with the previous .ensime,
+   * and the source roots, jars, options and module edges added or removed,
+   * with the kind of change (none, cosmetic, options-only or
+   * classpath-changed), are written to .ensime_cache/config-diff.json.
+   */
+  @Parameter(property = "ensime.diff", defaultValue = "true")
+  protected boolean diff;
+
+
 
   @Override
   public void execute() throws MojoExecutionException, MojoFailureException {
@@ -109,6 +172,91 @@ final public class GenerateMojo extends AbstractMojo {
     EnsimeConfigGenerator generator = new EnsimeConfigGenerator(project,
         repoSystem, session, properties, ensimeServerVersion, ensimeScalaVersion,
         getLog());
-    generator.generate(new File(project.getBasedir(), DOT_ENSIME));
+    configure(generator);
+    try {
+      generator.setSections(Sections.parse(sections, ensimeServerVersion));
+    } catch(IllegalArgumentException e) {
+      throw new MojoExecutionException("Unknown ensime.config.sections " + sections, e);
+    }
+    File dotEnsime = new File(project.getBasedir(), DOT_ENSIME);
+    File cacheDir = new File(project.getBasedir(), ".ensime_cache");
+    Optional<ConfigDiff.Snapshot> previous = Optional.empty();
+    if(diff && !streaming) {
+      try {
+        previous = ConfigDiff.previous(cacheDir, dotEnsime);
+      } catch(IOException e) {
+        getLog().debug("Unable to read the previous " + dotEnsime, e);
+      }
+    }
+    EnsimeConfig config;
+    if(streaming) {
+      try {
+        config = generator.generateStreaming(dotEnsime);
+      } catch(IOException e) {
+        throw new MojoExecutionException("Unable to write " + dotEnsime, e);
+      }
+      if(packageIndex || fingerprints || diff) {
+        getLog().info("Streaming generation: skipping the package index, fingerprints"
+          + " and configuration diff");
+      }
+    } else {
+      config = generator.generate(dotEnsime);
+    }
+
+    GenerationMetrics metrics = generator.getMetrics();
+    if(diff && !streaming) {
+      try {
+        ConfigDiff.Snapshot snapshot = ConfigDiff.of(config, dotEnsime);
+        ConfigDiff.Report report = ConfigDiff.diff(previous, snapshot);
+        getLog().info(report.summary());
+        ConfigDiff.write(cacheDir, snapshot, report);
+      } catch(IOException e) {
+        getLog().warn("Unable to write the configuration diff to " + cacheDir, e);
+      }
+    }
+    if(packageIndex && !streaming) {
+      long start = System.nanoTime();
+      File out = new File(config.getCacheDir(), PackageIndex.FILE_NAME);
+      try {
+        new PackageIndex(new File(config.getCacheDir(), PackageIndex.CACHE_NAME))
+          .write(config, out, Runtime.getRuntime().availableProcessors());
+      } catch(IOException e) {
+        getLog().warn("Unable to write the package index to " + out, e);
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new MojoExecutionException("Interrupted while indexing packages", e);
+      }
+      metrics.phase("package-index", System.nanoTime() - start);
+    }
+    if(fingerprints && !streaming) {
+      long start = System.nanoTime();
+      Fingerprints store = new Fingerprints(
+        new File(config.getCacheDir(), Fingerprints.FILE_NAME));
+      try {
+        Fingerprints.Report report = store.update(Fingerprints.files(config),
+          Runtime.getRuntime().availableProcessors());
+        getLog().info(report.summary());
+        report.write(new File(config.getCacheDir(), Fingerprints.REPORT_NAME));
+        store.save();
+      } catch(IOException e) {
+        getLog().warn("Unable to write fingerprints to " + config.getCacheDir(), e);
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new MojoExecutionException("Interrupted while fingerprinting", e);
+      }
+      metrics.phase("fingerprints", System.nanoTime() - start);
+    }
+    metrics.summary().forEach(getLog()::info);
+    finish(generator);
+    if(metricsFormat != null && !metricsFormat.trim().isEmpty()) {
+      String extension = metricsFormat.equalsIgnoreCase("json")? "json" : "txt";
+      File out = new File(project.getBuild().getDirectory(),
+          "ensime-metrics." + extension);
+      try {
+        metrics.write(metricsFormat.trim(), out);
+      } catch(IOException | IllegalArgumentException e) {
+        throw new MojoExecutionException("Unable to write metrics to " + out, e);
+      }
+    }
   }
 }
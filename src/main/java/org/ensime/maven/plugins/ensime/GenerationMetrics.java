@@ -0,0 +1,217 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import org.ensime.maven.plugins.ensime.formatter.JsonFormatter;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Wall time spent in each phase of a generation, per module, and per
+ * artifact resolution, so slow runs can be explained.
+ *
+ * Resolution latencies are kept as histograms keyed by operation (including
+ * the classifier), the repository that served the artifact and whether it
+ * was found at all.
+ */
+final public class GenerationMetrics {
+
+  /** Upper bounds of the latency buckets, in milliseconds. */
+  private static final long[] BUCKETS = {1, 5, 10, 50, 100, 500, 1000, 5000, 30000};
+
+  private static final class Timer {
+    long count;
+    long nanos;
+  }
+
+  private static final class Histogram {
+    final long[] counts = new long[BUCKETS.length + 1];
+    long count;
+    long nanos;
+
+    void record(final long took) {
+      long millis = took / 1000000L;
+      int i = 0;
+      while (i < BUCKETS.length && millis > BUCKETS[i]) i++;
+      counts[i]++;
+      count++;
+      nanos += took;
+    }
+  }
+
+  private final long start = System.nanoTime();
+  private final Map<String, Timer> phases = new LinkedHashMap<>();
+  private final Map<String, Long> modules = new LinkedHashMap<>();
+  private final Map<String, Histogram> resolutions = new TreeMap<>();
+
+  /**
+   * Runs the block and adds its wall time to the phase. Nested phases are
+   * counted in both.
+   */
+  public <T> T time(final String phase, final Supplier<T> block) {
+    long t0 = System.nanoTime();
+    try {
+      return block.get();
+    } finally {
+      phase(phase, System.nanoTime() - t0);
+    }
+  }
+
+  public synchronized void phase(final String phase, final long nanos) {
+    Timer timer = phases.computeIfAbsent(phase, p -> new Timer());
+    timer.count++;
+    timer.nanos += nanos;
+  }
+
+  public synchronized void module(final String name, final long nanos) {
+    modules.merge(name, nanos, Long::sum);
+  }
+
+  public synchronized void resolution(final String operation,
+      final String repository, final boolean hit, final long nanos) {
+    String key = operation + "|" + repository + "|" + (hit ? "hit" : "miss");
+    resolutions.computeIfAbsent(key, k -> new Histogram()).record(nanos);
+  }
+
+  private static long millis(final long nanos) {
+    return nanos / 1000000L;
+  }
+
+  /**
+   * A human readable summary: phases, the slowest modules and the
+   * resolution totals.
+   */
+  public synchronized List<String> summary() {
+    List<String> lines = new ArrayList<>();
+    lines.add(String.format("Generated in %d ms", millis(System.nanoTime() - start)));
+    phases.forEach((phase, t) -> lines.add(String.format(
+      "  phase %-20s %8d ms (%d calls)", phase, millis(t.nanos), t.count)));
+    modules.entrySet().stream()
+      .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+      .limit(5)
+      .forEach(e -> lines.add(String.format(
+        "  module %-19s %8d ms", e.getKey(), millis(e.getValue()))));
+    resolutions.forEach((key, h) -> {
+      String[] k = key.split("\\|");
+      lines.add(String.format("  %-20s %-12s %-4s %6d in %8d ms",
+        k[0], k[1], k[2], h.count, millis(h.nanos)));
+    });
+    return lines;
+  }
+
+  public synchronized String toJson() {
+    Map<String, Object> json = new LinkedHashMap<>();
+    json.put("wallMillis", millis(System.nanoTime() - start));
+    Map<String, Object> ps = new LinkedHashMap<>();
+    phases.forEach((phase, t) -> {
+      Map<String, Object> p = new LinkedHashMap<>();
+      p.put("calls", t.count);
+      p.put("millis", millis(t.nanos));
+      ps.put(phase, p);
+    });
+    json.put("phases", ps);
+    Map<String, Object> ms = new LinkedHashMap<>();
+    modules.forEach((name, nanos) -> ms.put(name, millis(nanos)));
+    json.put("modules", ms);
+    json.put("bucketsMillis", Arrays.stream(BUCKETS).boxed().collect(toList()));
+    List<Object> rs = new ArrayList<>();
+    resolutions.forEach((key, h) -> {
+      String[] k = key.split("\\|");
+      Map<String, Object> r = new LinkedHashMap<>();
+      r.put("operation", k[0]);
+      r.put("repository", k[1]);
+      r.put("outcome", k[2]);
+      r.put("count", h.count);
+      r.put("millis", millis(h.nanos));
+      r.put("buckets", Arrays.stream(h.counts).boxed().collect(toList()));
+      rs.add(r);
+    });
+    json.put("resolutions", rs);
+    return JsonFormatter.toJson(json);
+  }
+
+  private static String label(final String s) {
+    return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+  }
+
+  /**
+   * The metrics in the OpenMetrics text exposition format.
+   */
+  public synchronized String toOpenMetrics() {
+    StringBuilder b = new StringBuilder();
+    b.append("# TYPE ensime_generate_seconds gauge\n");
+    b.append("ensime_generate_seconds ")
+      .append((System.nanoTime() - start) / 1e9).append("\n");
+    b.append("# TYPE ensime_phase_seconds summary\n");
+    phases.forEach((phase, t) -> {
+      b.append("ensime_phase_seconds_count{phase=").append(label(phase))
+        .append("} ").append(t.count).append("\n");
+      b.append("ensime_phase_seconds_sum{phase=").append(label(phase))
+        .append("} ").append(t.nanos / 1e9).append("\n");
+    });
+    b.append("# TYPE ensime_module_seconds gauge\n");
+    modules.forEach((name, nanos) ->
+      b.append("ensime_module_seconds{module=").append(label(name))
+        .append("} ").append(nanos / 1e9).append("\n"));
+    b.append("# TYPE ensime_resolution_seconds histogram\n");
+    resolutions.forEach((key, h) -> {
+      String[] k = key.split("\\|");
+      String labels = "operation=" + label(k[0]) + ",repository=" + label(k[1])
+        + ",outcome=" + label(k[2]);
+      long cumulative = 0;
+      for (int i = 0; i <= BUCKETS.length; i++) {
+        cumulative += h.counts[i];
+        String le = i < BUCKETS.length ? Double.toString(BUCKETS[i] / 1000.0) : "+Inf";
+        b.append("ensime_resolution_seconds_bucket{").append(labels)
+          .append(",le=").append(label(le)).append("} ").append(cumulative).append("\n");
+      }
+      b.append("ensime_resolution_seconds_count{").append(labels).append("} ")
+        .append(h.count).append("\n");
+      b.append("ensime_resolution_seconds_sum{").append(labels).append("} ")
+        .append(h.nanos / 1e9).append("\n");
+    });
+    b.append("# EOF\n");
+    return b.toString();
+  }
+
+  /**
+   * Writes the metrics as "json" or "openmetrics".
+   */
+  public void write(final String format, final File out) throws IOException {
+    String content;
+    if (format.equalsIgnoreCase("json")) content = toJson() + "\n";
+    else if (format.equalsIgnoreCase("openmetrics")) content = toOpenMetrics();
+    else throw new IllegalArgumentException("Unknown metrics format " + format);
+    File dir = out.getParentFile();
+    if (dir != null && !dir.exists() && !dir.mkdirs()) {
+      throw new IOException("Unable to create " + dir);
+    }
+    try(PrintWriter writer = new PrintWriter(out)) {
+      writer.write(content);
+    }
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.ensime.maven.plugins.ensime.formatter.JsonFormatter;
+
+/**
+ * Follows the output of an index-only ENSIME server and records how long
+ * each phase of the run took.
+ *
+ * Phases are detected from the server's log lines, so an unknown server
+ * version simply reports a single "startup" phase that lasts the whole run.
+ */
+final public class IndexRunReport {
+
+  private static final Pattern INDEXING =
+    Pattern.compile("(?i)\\bindexing\\b");
+  private static final Pattern PERSISTING =
+    Pattern.compile("(?i)(persist|committ|database ind)");
+  private static final Pattern SHUTDOWN =
+    Pattern.compile("(?i)(shutting down|exitAfterIndex|stopping)");
+  private static final Pattern PROGRESS =
+    Pattern.compile("(?i)indexed (\\d+)(?:\\s*(?:/|of)\\s*(\\d+))?");
+
+  // lines of output kept to explain a failed run
+  private static final int TAIL_LINES = 50;
+
+  private final long start = System.nanoTime();
+  private final List<String> phaseNames = new ArrayList<>();
+  private final List<Long> phaseStarts = new ArrayList<>();
+  private final int jarCount;
+  private final Deque<String> tail = new ArrayDeque<>();
+  private long end = -1;
+  private long lines = 0;
+  private long indexed = 0;
+  private String exitStatus = "running";
+  private Optional<Integer> exitCode = Optional.empty();
+
+  public IndexRunReport(final int jarCount) {
+    this.jarCount = jarCount;
+    enter("startup", start);
+  }
+
+  private void enter(final String phase, final long at) {
+    if (phaseNames.isEmpty() || !currentPhase().equals(phase)) {
+      phaseNames.add(phase);
+      phaseStarts.add(at);
+    }
+  }
+
+  public synchronized String currentPhase() {
+    return phaseNames.get(phaseNames.size() - 1);
+  }
+
+  public synchronized long getIndexed() { return indexed; }
+
+  /**
+   * Feeds one line of server output.
+   *
+   * @return a progress message when the line advanced the phase or the
+   *         indexed count, empty otherwise
+   */
+  public synchronized Optional<String> line(final String line) {
+    lines++;
+    if (tail.size() == TAIL_LINES) tail.removeFirst();
+    tail.addLast(line);
+    String before = currentPhase();
+    long now = System.nanoTime();
+    if (SHUTDOWN.matcher(line).find()) enter("shutdown", now);
+    else if (PERSISTING.matcher(line).find()) enter("persisting", now);
+    else if (INDEXING.matcher(line).find()) enter("indexing", now);
+
+    Matcher m = PROGRESS.matcher(line);
+    if (m.find()) {
+      indexed = Long.parseLong(m.group(1));
+      String of = Optional.ofNullable(m.group(2)).map(t -> "/" + t).orElse("");
+      return Optional.of("[" + currentPhase() + "] indexed " + indexed + of);
+    } else if (!before.equals(currentPhase())) {
+      return Optional.of("[" + currentPhase() + "] after " + elapsedMillis(now) + " ms");
+    } else return Optional.empty();
+  }
+
+  public synchronized void finished(final int code) {
+    end = System.nanoTime();
+    exitCode = Optional.of(code);
+    exitStatus = code == 0 ? "success" : "failure";
+  }
+
+  public synchronized void timedOut() {
+    end = System.nanoTime();
+    exitStatus = "timeout";
+  }
+
+  public synchronized void failed(final String reason) {
+    end = System.nanoTime();
+    exitStatus = reason;
+  }
+
+  public synchronized String getExitStatus() { return exitStatus; }
+
+  public synchronized Optional<Integer> getExitCode() { return exitCode; }
+
+  public synchronized boolean isSuccess() { return exitStatus.equals("success"); }
+
+  /**
+   * The last lines of server output, oldest first.
+   */
+  public synchronized List<String> getTail() { return new ArrayList<>(tail); }
+
+  private long elapsedMillis(final long at) {
+    return (at - start) / 1000000L;
+  }
+
+  public synchronized long getWallMillis() {
+    return elapsedMillis(end < 0 ? System.nanoTime() : end);
+  }
+
+  public synchronized Map<String, Long> getPhaseMillis() {
+    long stop = end < 0 ? System.nanoTime() : end;
+    Map<String, Long> phases = new LinkedHashMap<>();
+    for (int i = 0; i < phaseNames.size(); i++) {
+      long next = i + 1 < phaseStarts.size() ? phaseStarts.get(i + 1) : stop;
+      phases.merge(phaseNames.get(i), (next - phaseStarts.get(i)) / 1000000L, Long::sum);
+    }
+    return phases;
+  }
+
+  public synchronized String toJson() {
+    Map<String, Object> json = new LinkedHashMap<>();
+    json.put("wallMillis", getWallMillis());
+    json.put("phaseMillis", getPhaseMillis());
+    json.put("jarCount", jarCount);
+    json.put("indexed", indexed);
+    json.put("outputLines", lines);
+    json.put("exitStatus", exitStatus);
+    json.put("exitCode", exitCode.orElse(null));
+    return JsonFormatter.toJson(json);
+  }
+
+  public void write(final File out) throws IOException {
+    File dir = out.getParentFile();
+    if (dir != null && !dir.exists() && !dir.mkdirs()) {
+      throw new IOException("Unable to create " + dir);
+    }
+    try(PrintWriter writer = new PrintWriter(out)) {
+      writer.write(toJson() + "\n");
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.ensime.maven.plugins.ensime.formatter.SExpFormatter.Sections;
+import org.ensime.maven.plugins.ensime.model.EnsimeProject;
+
+import static java.util.stream.Collectors.counting;
+import static java.util.stream.Collectors.groupingBy;
+
+/**
+ * Assembles .ensime from the fragments the fragment goal left in each
+ * module's target/.
+ *
+ * Dependencies are not resolved for the reactor. Modules without a fragment,
+ * whose pom is newer than it, or whose effective model changed since it was
+ * written, e.g. through a parent pom or an imported BOM, are generated in
+ * process from their declared dependencies.
+ */
+@Mojo(name = "merge", requiresProject = true, aggregator = true)
+final public class MergeMojo extends AbstractMojo {
+
+  @Component
+  protected MavenProject project;
+
+  @Parameter(defaultValue = "${repositorySystemSession}", readonly = true)
+  private RepositorySystemSession session;
+
+  @Component
+  private RepositorySystem repoSystem;
+
+  /**
+   * ENSIME server
+   */
+  @Parameter(property = "ensime.server.version",
+              defaultValue = "2.0.0-M4")
+  protected String ensimeServerVersion;
+
+  /**
+   * Ensime Scala version
+   *
+   * Defaults to the version most fragments were generated with.
+   */
+  @Parameter(property = "ensime.scala.version")
+  protected String ensimeScalaVersion;
+
+  /**
+   * Module sections to write, as for generate.
+   */
+  @Parameter(property = "ensime.config.sections", defaultValue = "auto")
+  protected String sections;
+
+  private static File fragmentOf(final MavenProject module) {
+    return new File(module.getBuild().getDirectory(), ProjectFragment.FILE_NAME);
+  }
+
+  private static boolean isNewerThanPom(final File fragment, final MavenProject module) {
+    return fragment.isFile() && (module.getFile() == null ||
+        module.getFile().lastModified() <= fragment.lastModified());
+  }
+
+  private static boolean isFresh(final MavenProject module,
+      final ProjectFragment fragment) {
+    return fragment.getInputs().map(ProjectFragment.inputs(module)::equals)
+      .orElse(false);
+  }
+
+  @Override
+  public void execute() throws MojoExecutionException {
+    List<MavenProject> modules = new ArrayList<>(project.getCollectedProjects());
+    modules.add(project);
+    modules.removeIf(m -> m.getPackaging().equals("pom"));
+
+    List<ProjectFragment> fragments = new ArrayList<>();
+    List<MavenProject> missing = new ArrayList<>();
+    for (MavenProject module : modules) {
+      if (!isNewerThanPom(fragmentOf(module), module)) {
+        missing.add(module);
+        continue;
+      }
+      try {
+        ProjectFragment fragment = ProjectFragment.read(fragmentOf(module));
+        if (isFresh(module, fragment)) fragments.add(fragment);
+        else missing.add(module);
+      } catch(IOException e) {
+        getLog().warn("Ignoring " + fragmentOf(module) + ": " + e.getMessage());
+        missing.add(module);
+      }
+    }
+
+    String scalaVersion = ensimeScalaVersion;
+    if(scalaVersion == null) {
+      scalaVersion = fragments.stream()
+        .filter(f -> f.getScalaVersion() != null)
+        .collect(groupingBy(ProjectFragment::getScalaVersion, counting()))
+        .entrySet().stream()
+        .max(Map.Entry.comparingByValue())
+        .map(Map.Entry::getKey).orElse(null);
+    }
+
+    EnsimeConfigGenerator generator = new EnsimeConfigGenerator(project,
+        repoSystem, session, new Properties(), ensimeServerVersion,
+        scalaVersion, getLog());
+    try {
+      generator.setSections(Sections.parse(sections, ensimeServerVersion));
+    } catch(IllegalArgumentException e) {
+      throw new MojoExecutionException("Unknown ensime.config.sections " + sections, e);
+    }
+
+    List<EnsimeProject> projects = new ArrayList<>();
+    fragments.forEach(f -> projects.add(f.getProject()));
+    for (MavenProject module : missing) {
+      getLog().warn("No up to date fragment for " + module.getArtifactId()
+          + ", generating it without dependency resolution");
+      projects.add(generator.generateProject(module));
+    }
+
+    generator.write(generator.generateConfig(projects),
+        new File(project.getBasedir(), GenerateMojo.DOT_ENSIME));
+    getLog().info(String.format("Merged %d fragments, generated %d modules",
+        fragments.size(), missing.size()));
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.ensime.maven.plugins.ensime.formatter.JsonFormatter;
+import org.ensime.maven.plugins.ensime.model.EnsimeConfig;
+import org.ensime.maven.plugins.ensime.model.EnsimeModule;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * The packages each jar of a module's classpath provides, written to
+ * .ensime_cache/package-index.json so tools can go from an import to its
+ * jar without waiting for the ENSIME index.
+ *
+ * Only the ZIP central directory of a jar is read, through a memory mapped
+ * channel, and nothing is decompressed. The packages of a jar are kept in
+ * .ensime_cache/package-index.cache until its size or mtime changes.
+ */
+final public class PackageIndex {
+
+  public static final String FILE_NAME = "package-index.json";
+  public static final String CACHE_NAME = "package-index.cache";
+
+  private static final int EOCD = 0x06054b50;
+  private static final int EOCD_SIZE = 22;
+  private static final int ZIP64_LOCATOR = 0x07064b50;
+  private static final int ZIP64_EOCD = 0x06064b50;
+  private static final int CENTRAL_HEADER = 0x02014b50;
+  private static final int CENTRAL_HEADER_SIZE = 46;
+
+  private final StampCache cache;
+
+  public PackageIndex(final File cache) {
+    this.cache = new StampCache(cache);
+  }
+
+  /**
+   * The packages of a jar, from the cache when it has not changed.
+   */
+  public Set<String> packages(final File jar) {
+    Optional<String> cached = cache.get(jar);
+    if (cached.isPresent()) {
+      return cached.get().isEmpty() ? Collections.emptySet()
+        : new HashSet<>(Arrays.asList(cached.get().split(",")));
+    }
+    try {
+      Set<String> packages = readPackages(jar);
+      cache.put(jar, new TreeSet<>(packages).stream().collect(joining(",")));
+      return packages;
+    } catch (IOException e) {
+      return Collections.emptySet();
+    }
+  }
+
+  /**
+   * The packages of every jar, read on at most the given number of threads.
+   */
+  public Map<File, Set<String>> packages(final Collection<File> jars, final int threads)
+      throws InterruptedException {
+    Map<File, Set<String>> packages = new ConcurrentHashMap<>();
+    StampCache.forEach(jars, threads, f -> {
+      if (f.isFile() && f.getName().endsWith(".jar")) packages.put(f, packages(f));
+    });
+    return packages;
+  }
+
+  /**
+   * The packages of the classes in a jar's central directory.
+   */
+  static Set<String> readPackages(final File jar) throws IOException {
+    try (FileChannel channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < EOCD_SIZE) throw new IOException(jar + " is not a ZIP file");
+      long tailStart = Math.max(0, size - EOCD_SIZE - 0xffff);
+      MappedByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY,
+        tailStart, size - tailStart);
+      tail.order(ByteOrder.LITTLE_ENDIAN);
+
+      int eocd = -1;
+      for (int i = tail.limit() - EOCD_SIZE; i >= 0; i--) {
+        if (tail.getInt(i) == EOCD &&
+            i + EOCD_SIZE + (tail.getShort(i + 20) & 0xffff) == tail.limit()) {
+          eocd = i;
+          break;
+        }
+      }
+      if (eocd < 0) throw new IOException(jar + " has no central directory");
+
+      long cdSize = tail.getInt(eocd + 12) & 0xffffffffL;
+      long cdOffset = tail.getInt(eocd + 16) & 0xffffffffL;
+      if (cdOffset == 0xffffffffL || cdSize == 0xffffffffL) {
+        int locator = eocd - 20;
+        if (locator < 0 || tail.getInt(locator) != ZIP64_LOCATOR) {
+          throw new IOException(jar + " has a truncated ZIP64 directory");
+        }
+        long zip64 = tail.getLong(locator + 8);
+        MappedByteBuffer record = channel.map(FileChannel.MapMode.READ_ONLY, zip64, 56);
+        record.order(ByteOrder.LITTLE_ENDIAN);
+        if (record.getInt(0) != ZIP64_EOCD) {
+          throw new IOException(jar + " has a truncated ZIP64 directory");
+        }
+        cdSize = record.getLong(40);
+        cdOffset = record.getLong(48);
+      }
+      if (cdOffset + cdSize > size || cdSize > Integer.MAX_VALUE) {
+        throw new IOException(jar + " has a corrupt central directory");
+      }
+
+      MappedByteBuffer cd = channel.map(FileChannel.MapMode.READ_ONLY, cdOffset, cdSize);
+      cd.order(ByteOrder.LITTLE_ENDIAN);
+      Set<String> packages = new HashSet<>();
+      byte[] name = new byte[256];
+      int pos = 0;
+      while (pos + CENTRAL_HEADER_SIZE <= cd.limit() && cd.getInt(pos) == CENTRAL_HEADER) {
+        int nameLength = cd.getShort(pos + 28) & 0xffff;
+        int extraLength = cd.getShort(pos + 30) & 0xffff;
+        int commentLength = cd.getShort(pos + 32) & 0xffff;
+        if (pos + CENTRAL_HEADER_SIZE + nameLength > cd.limit()) break;
+        if (name.length < nameLength) name = new byte[nameLength];
+        for (int i = 0; i < nameLength; i++) {
+          name[i] = cd.get(pos + CENTRAL_HEADER_SIZE + i);
+        }
+        packageOf(name, nameLength).ifPresent(packages::add);
+        pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+      }
+      return packages;
+    }
+  }
+
+  private static boolean startsWith(final byte[] name, final int length, final String prefix) {
+    if (length < prefix.length()) return false;
+    for (int i = 0; i < prefix.length(); i++) {
+      if (name[i] != prefix.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  private static boolean endsWith(final byte[] name, final int length, final String suffix) {
+    if (length < suffix.length()) return false;
+    for (int i = 0; i < suffix.length(); i++) {
+      if (name[length - suffix.length() + i] != suffix.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  private static Optional<String> packageOf(final byte[] name, final int length) {
+    if (!endsWith(name, length, ".class") || endsWith(name, length, "module-info.class") ||
+        startsWith(name, length, "META-INF/")) {
+      return Optional.empty();
+    }
+    int slash = length - 1;
+    while (slash >= 0 && name[slash] != '/') slash--;
+    if (slash <= 0) return Optional.empty();
+    return Optional.of(
+      new String(name, 0, slash, StandardCharsets.UTF_8).replace('/', '.'));
+  }
+
+  /**
+   * Writes the packages of every module's jars, package by package, and
+   * keeps the jars read this time in the cache.
+   */
+  public void write(final EnsimeConfig config, final File out, final int threads)
+      throws IOException, InterruptedException {
+    Map<String, Set<File>> classpaths = new TreeMap<>();
+    config.getModules().forEach((name, module) ->
+      classpaths.put(name, classpath(module)));
+    Map<File, Set<String>> packages = packages(classpaths.values().stream()
+      .flatMap(Set::stream).collect(toSet()), threads);
+
+    Map<String, Object> modules = new TreeMap<>();
+    classpaths.forEach((name, jars) -> {
+      Map<String, Set<String>> byPackage = new TreeMap<>();
+      jars.forEach(jar -> packages.getOrDefault(jar, Collections.emptySet())
+        .forEach(p -> byPackage.computeIfAbsent(p, k -> new TreeSet<>())
+          .add(jar.getAbsolutePath())));
+      modules.put(name, byPackage);
+    });
+    Map<String, Object> json = new TreeMap<>();
+    json.put("modules", modules);
+
+    AtomicFiles.write(out.toPath(), staging -> Files.write(staging,
+      (JsonFormatter.toJson(json) + "\n").getBytes(StandardCharsets.UTF_8)));
+    save();
+  }
+
+  private static Set<File> classpath(final EnsimeModule module) {
+    return Stream.of(module.getCompileJars(), module.getRuntimeJars(), module.getTestJars())
+      .flatMap(Set::stream).collect(toSet());
+  }
+
+  /**
+   * Keeps the jars looked up by this index, dropping the ones that are no
+   * longer on any classpath.
+   */
+  void save() throws IOException {
+    cache.save("Packages of each jar: size, mtime, packages");
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.maven.model.Plugin;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * The parts of a module's compiler plugin configuration that ENSIME cares
+ * about, read once per module.
+ *
+ * A plugin declared in the module's build wins; otherwise its
+ * pluginManagement entry is used, as before.
+ */
+final public class PluginSettings {
+
+  public final static String SCALA_MAVEN_PLUGIN = "net.alchim31.maven:scala-maven-plugin";
+  public final static String JAVA_MAVEN_PLUGIN = "org.apache.maven.plugins:maven-compiler-plugin";
+
+  private final List<String> scalacArgs;
+  private final List<String> jvmArgs;
+  private final List<String> sources;
+  private final Optional<String> scalaOrganization;
+  private final List<String> compilerArgs;
+
+  public PluginSettings(final List<String> scalacArgs,
+      final List<String> jvmArgs,
+      final List<String> sources,
+      final Optional<String> scalaOrganization,
+      final List<String> compilerArgs) {
+    this.scalacArgs        = Collections.unmodifiableList(scalacArgs);
+    this.jvmArgs           = Collections.unmodifiableList(jvmArgs);
+    this.sources           = Collections.unmodifiableList(sources);
+    this.scalaOrganization = scalaOrganization;
+    this.compilerArgs      = Collections.unmodifiableList(compilerArgs);
+  }
+
+  /** scala-maven-plugin args, empty when not configured */
+  public List<String> getScalacArgs() { return scalacArgs; }
+  /** scala-maven-plugin jvmArgs */
+  public List<String> getJvmArgs() { return jvmArgs; }
+  /** scala-maven-plugin sources */
+  public List<String> getSources() { return sources; }
+  /** scala-maven-plugin scalaOrganization */
+  public Optional<String> getScalaOrganization() { return scalaOrganization; }
+  /** maven-compiler-plugin compilerArgs */
+  public List<String> getCompilerArgs() { return compilerArgs; }
+
+  private static Optional<Plugin> plugin(final Map<?, ?> plugins, final String key) {
+    return Optional.ofNullable(plugins).map(m -> (Plugin) m.get(key));
+  }
+
+  private static Optional<Xpp3Dom> configuration(final MavenProject project,
+      final String key) {
+    Optional<Plugin> declared = Optional.ofNullable(project.getBuild())
+      .flatMap(b -> plugin(b.getPluginsAsMap(), key));
+    Optional<Plugin> managed = Optional.ofNullable(project.getPluginManagement())
+      .flatMap(pm -> plugin(pm.getPluginsAsMap(), key));
+    return Optional.ofNullable(declared.orElse(managed.orElse(null)))
+      .map(p -> p.getConfiguration())
+      .filter(obj -> obj instanceof Xpp3Dom)
+      .map(obj -> (Xpp3Dom) obj);
+  }
+
+
+  private static List<String> values(final Optional<Xpp3Dom> config,
+      final String name) {
+    return config.map(c -> c.getChild(name))
+      .map(ch -> Arrays.stream(ch.getChildren()).map(v -> v.getValue())
+                 .collect(toList()))
+      .orElse(Collections.emptyList());
+  }
+
+  /**
+   * Walks the module's plugin configuration once.
+   */
+  public static PluginSettings of(final MavenProject project) {
+    Optional<Xpp3Dom> scalac = configuration(project, SCALA_MAVEN_PLUGIN);
+    Optional<Xpp3Dom> javac = configuration(project, JAVA_MAVEN_PLUGIN);
+    return new PluginSettings(
+      values(scalac, "args"),
+      values(scalac, "jvmArgs"),
+      values(scalac, "sources"),
+      scalac.map(c -> c.getChild("scalaOrganization")).map(ch -> ch.getValue()),
+      values(javac, "compilerArgs"));
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.transfer.TransferCancelledException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferListener;
+
+/**
+ * Downloads every jar, sources and javadoc artifact that generate and
+ * serverIndex need, without writing any configuration, so that later runs
+ * are purely local. Meant for building CI and development images.
+ */
+@Mojo(name = "prefetch", requiresProject = true,
+      requiresDependencyResolution = ResolutionScope.TEST, aggregator = true)
+final public class PrefetchMojo extends AbstractResolveMojo {
+
+  /**
+   * The project whose dependencies to fetch.
+   */
+  @Component
+  protected MavenProject project;
+
+  @Parameter(defaultValue = "${repositorySystemSession}", readonly = true)
+  private RepositorySystemSession session;
+
+  @Component
+  private RepositorySystem repoSystem;
+
+  /**
+   * ENSIME server
+   */
+  @Parameter(property = "ensime.server.version",
+              defaultValue = "2.0.0-M4")
+  protected String ensimeServerVersion;
+
+  /**
+   * Ensime Scala version
+   */
+  @Parameter(property = "ensime.scala.version")
+  protected String ensimeScalaVersion;
+
+  /**
+   * Number of artifacts resolved concurrently.
+   */
+  @Parameter(property = "ensime.prefetch.threads", defaultValue = "8")
+  protected int threads;
+
+  /**
+   * Counts the artifacts actually downloaded, and forwards every event to
+   * the session's own listener so Maven still reports progress.
+   */
+  private static final class DownloadCounter implements TransferListener {
+    private final TransferListener delegate;
+    final AtomicLong artifacts = new AtomicLong();
+    final AtomicLong bytes = new AtomicLong();
+
+    DownloadCounter(final TransferListener delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void transferInitiated(final TransferEvent event)
+        throws TransferCancelledException {
+      if (delegate != null) delegate.transferInitiated(event);
+    }
+
+    @Override
+    public void transferStarted(final TransferEvent event)
+        throws TransferCancelledException {
+      if (delegate != null) delegate.transferStarted(event);
+    }
+
+    @Override
+    public void transferProgressed(final TransferEvent event)
+        throws TransferCancelledException {
+      if (delegate != null) delegate.transferProgressed(event);
+    }
+
+    @Override
+    public void transferCorrupted(final TransferEvent event)
+        throws TransferCancelledException {
+      if (delegate != null) delegate.transferCorrupted(event);
+    }
+
+    @Override
+    public void transferSucceeded(final TransferEvent event) {
+      if (event.getRequestType() == TransferEvent.RequestType.GET &&
+          event.getResource().getResourceName().endsWith(".jar")) {
+        artifacts.incrementAndGet();
+        bytes.addAndGet(event.getTransferredBytes());
+      }
+      if (delegate != null) delegate.transferSucceeded(event);
+    }
+
+    @Override
+    public void transferFailed(final TransferEvent event) {
+      if (delegate != null) delegate.transferFailed(event);
+    }
+  }
+
+  @Override
+  public void execute() throws MojoExecutionException {
+    DownloadCounter counter = new DownloadCounter(session.getTransferListener());
+    DefaultRepositorySystemSession counting = new DefaultRepositorySystemSession(session);
+    counting.setTransferListener(counter);
+
+    EnsimeConfigGenerator generator = new EnsimeConfigGenerator(project,
+        repoSystem, counting, new Properties(), ensimeServerVersion,
+        ensimeScalaVersion, getLog());
+    configure(generator);
+    long start = System.nanoTime();
+    Set<File> files;
+    try {
+      files = generator.prefetch(Math.max(1, threads));
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while prefetching", e);
+    }
+    double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+
+    getLog().info(String.format(
+        "Prefetched %d files in %.1f s: downloaded %d artifacts, %.1f MB"
+        + " (%.1f artifacts/s, %.2f MB/s)",
+        files.size(), seconds, counter.artifacts.get(),
+        counter.bytes.get() / 1e6, counter.artifacts.get() / seconds,
+        counter.bytes.get() / 1e6 / seconds));
+    generator.getMetrics().summary().forEach(getLog()::info);
+    finish(generator);
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.project.MavenProject;
+import org.ensime.maven.plugins.ensime.model.EnsimeProject;
+import org.ensime.maven.plugins.ensime.model.EnsimeProjectId;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * One module's EnsimeProject, as written to its target/ by the fragment goal
+ * and read back by the merge goal. Stored as properties with one list
+ * element per line.
+ *
+ * A fragment also records a hash of the module's effective model, so the
+ * merge goal can tell when a parent pom, dependencyManagement or an
+ * imported BOM changed what the module resolves to.
+ */
+final public class ProjectFragment {
+
+  public static final String FILE_NAME = "ensime-fragment.properties";
+
+  private final EnsimeProject project;
+  private final String scalaVersion;
+  private final Optional<String> inputs;
+
+  public ProjectFragment(final EnsimeProject project, final String scalaVersion) {
+    this(project, scalaVersion, Optional.empty());
+  }
+
+  public ProjectFragment(final EnsimeProject project, final String scalaVersion,
+      final Optional<String> inputs) {
+    this.project = project;
+    this.scalaVersion = scalaVersion;
+    this.inputs = inputs;
+  }
+
+  public EnsimeProject getProject() { return project; }
+  public String getScalaVersion() { return scalaVersion; }
+  /** the inputs hash of the module the fragment was generated from */
+  public Optional<String> getInputs() { return inputs; }
+
+  /**
+   * Hashes what a module's fragment is derived from in its effective model:
+   * its dependencies, with the versions parents, dependencyManagement and
+   * imported BOMs gave them, its source roots, output directory and
+   * compiler plugin settings.
+   */
+  public static String inputs(final MavenProject module) {
+    List<String> parts = new ArrayList<>();
+    List<Dependency> dependencies = module.getDependencies();
+    dependencies.forEach(d -> parts.add(String.join(":", d.getManagementKey(),
+        String.valueOf(d.getVersion()), String.valueOf(d.getScope()),
+        String.valueOf(d.isOptional())) + d.getExclusions().stream()
+        .map(e -> e.getGroupId() + ":" + e.getArtifactId()).sorted()
+        .collect(joining(",", "[", "]"))));
+    parts.add("goal:" + module.getDefaultGoal());
+    parts.add("roots:" + module.getCompileSourceRoots());
+    parts.add("output:" + Optional.ofNullable(module.getBuild())
+        .map(b -> b.getOutputDirectory()).orElse(null));
+    PluginSettings settings = PluginSettings.of(module);
+    parts.add("scalac:" + settings.getScalacArgs() + settings.getJvmArgs()
+        + settings.getSources() + settings.getScalaOrganization());
+    parts.add("javac:" + settings.getCompilerArgs());
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      parts.forEach(p -> {
+        digest.update(p.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+      });
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest.digest()) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private static String lines(final Collection<String> values) {
+    return values.stream().collect(joining("\n"));
+  }
+
+  private static String files(final Set<File> files) {
+    return lines(files.stream().map(File::getAbsolutePath).sorted().collect(toList()));
+  }
+
+  private static List<String> lines(final Properties props, final String key) {
+    return Arrays.stream(props.getProperty(key, "").split("\n"))
+      .filter(s -> !s.isEmpty()).collect(toList());
+  }
+
+  private static Set<File> files(final Properties props, final String key) {
+    return lines(props, key).stream().map(File::new).collect(toSet());
+  }
+
+  public void write(final File out) throws IOException {
+    Properties props = new Properties();
+    props.setProperty("scala-version", scalaVersion);
+    inputs.ifPresent(hash -> props.setProperty("inputs", hash));
+    props.setProperty("project", project.getId().getProject());
+    props.setProperty("config", project.getId().getConfig());
+    props.setProperty("depends", lines(project.getDependsOn().stream()
+        .map(id -> id.getProject() + ":" + id.getConfig()).collect(toList())));
+    props.setProperty("sources", files(project.getSources()));
+    props.setProperty("targets", files(project.getTargets()));
+    props.setProperty("scalac-options", lines(project.getScalacOptions()));
+    props.setProperty("javac-options", lines(project.getJavacOptions()));
+    props.setProperty("library-jars", files(project.getLibraryJars()));
+    props.setProperty("library-sources", files(project.getLibrarySources()));
+    props.setProperty("library-docs", files(project.getLibraryDocs()));
+
+    Files.createDirectories(out.getAbsoluteFile().getParentFile().toPath());
+    File tmp = new File(out.getPath() + ".tmp");
+    try (OutputStream os = new FileOutputStream(tmp)) {
+      props.store(os, "ENSIME project of " + project.getId().getProject());
+    }
+    Files.move(tmp.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  public static ProjectFragment read(final File in) throws IOException {
+    Properties props = new Properties();
+    try (InputStream is = new FileInputStream(in)) {
+      props.load(is);
+    }
+    if (props.getProperty("project") == null) {
+      throw new IOException(in + " is not an ENSIME project fragment");
+    }
+    List<EnsimeProjectId> depends = lines(props, "depends").stream()
+      .map(s -> {
+        int colon = s.lastIndexOf(':');
+        return new EnsimeProjectId(s.substring(0, colon), s.substring(colon + 1));
+      }).collect(toList());
+    EnsimeProject project = new EnsimeProject(
+      new EnsimeProjectId(props.getProperty("project"),
+        props.getProperty("config", "compile")),
+      depends, files(props, "sources"), files(props, "targets"),
+      lines(props, "scalac-options"), lines(props, "javac-options"),
+      files(props, "library-jars"), files(props, "library-sources"),
+      files(props, "library-docs"));
+    return new ProjectFragment(project, props.getProperty("scala-version"),
+      Optional.ofNullable(props.getProperty("inputs")));
+  }
+}
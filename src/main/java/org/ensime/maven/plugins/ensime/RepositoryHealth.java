@@ -0,0 +1,174 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.eclipse.aether.repository.ArtifactRepository;
+import org.eclipse.aether.resolution.ArtifactDescriptorException;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.resolution.DependencyResolutionException;
+import org.eclipse.aether.collection.DependencyCollectionException;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.ArtifactTransferException;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
+import org.eclipse.aether.transfer.MetadataTransferException;
+
+/**
+ * A circuit breaker per remote repository.
+ *
+ * A repository whose transfers fail a number of times in a row, e.g. because
+ * it is unreachable or times out, is left out of every later request of the
+ * run. An artifact that is simply not found does not count as a failure.
+ */
+final public class RepositoryHealth {
+
+  private final int maxFailures;
+  private final Map<String, Integer> failures = new TreeMap<>();
+  private final Map<String, String> tripped = new LinkedHashMap<>();
+  private final Map<String, Long> skipped = new TreeMap<>();
+
+  /**
+   * @param maxFailures consecutive failures before a repository is skipped,
+   *                    0 never skips
+   */
+  public RepositoryHealth(final int maxFailures) {
+    this.maxFailures = maxFailures;
+  }
+
+  public synchronized boolean isTripped(final String repository) {
+    return tripped.containsKey(repository);
+  }
+
+  /** Counts a lookup that left out a tripped repository. */
+  public synchronized void skipped(final String repository) {
+    skipped.merge(repository, 1L, Long::sum);
+  }
+
+  public synchronized void succeeded(final String repository) {
+    failures.remove(repository);
+  }
+
+  /**
+   * @return true when this failure tripped the breaker
+   */
+  public synchronized boolean failed(final String repository, final String reason) {
+    int count = failures.merge(repository, 1, Integer::sum);
+    if (maxFailures > 0 && count >= maxFailures && !tripped.containsKey(repository)) {
+      tripped.put(repository, reason);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Records the successful transfers of a resolution.
+   */
+  public void succeeded(final List<ArtifactResult> results) {
+    results.stream()
+      .filter(r -> r.isResolved())
+      .map(ArtifactResult::getRepository)
+      .filter(r -> r != null)
+      .map(ArtifactRepository::getId)
+      .distinct()
+      .forEach(this::succeeded);
+  }
+
+  /**
+   * Records every failed transfer found in a resolution exception.
+   *
+   * @return the repositories whose breaker tripped
+   */
+  public List<String> failed(final Exception ex) {
+    return failed(Collections.singletonList(ex));
+  }
+
+  /**
+   * Records every failed transfer found in the exceptions a resolution
+   * recorded, also when another repository went on to serve the artifact.
+   *
+   * @return the repositories whose breaker tripped
+   */
+  public List<String> failed(final List<? extends Throwable> exceptions) {
+    Map<String, String> reasons = new LinkedHashMap<>();
+    Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    exceptions.forEach(ex -> collect(ex, reasons, seen));
+    List<String> trips = new ArrayList<>();
+    reasons.forEach((repository, reason) -> {
+      if (failed(repository, reason)) trips.add(repository);
+    });
+    return trips;
+  }
+
+  private static void collect(final Throwable t, final Map<String, String> reasons,
+      final Set<Throwable> seen) {
+    if (t == null || !seen.add(t)) return;
+    if (t instanceof ArtifactTransferException && !(t instanceof ArtifactNotFoundException)) {
+      ArtifactTransferException ate = (ArtifactTransferException) t;
+      if (ate.getRepository() != null) {
+        reasons.putIfAbsent(ate.getRepository().getId(), String.valueOf(ate.getMessage()));
+      }
+    } else if (t instanceof MetadataTransferException && !(t instanceof MetadataNotFoundException)) {
+      MetadataTransferException mte = (MetadataTransferException) t;
+      if (mte.getRepository() != null) {
+        reasons.putIfAbsent(mte.getRepository().getId(), String.valueOf(mte.getMessage()));
+      }
+    }
+
+    List<Throwable> nested = new ArrayList<>();
+    if (t instanceof ArtifactResolutionException) {
+      ((ArtifactResolutionException) t).getResults()
+        .forEach(r -> nested.addAll(r.getExceptions()));
+    } else if (t instanceof DependencyResolutionException) {
+      if (((DependencyResolutionException) t).getResult() != null) {
+        ((DependencyResolutionException) t).getResult().getArtifactResults()
+          .forEach(r -> nested.addAll(r.getExceptions()));
+        nested.addAll(((DependencyResolutionException) t).getResult().getCollectExceptions());
+      }
+    } else if (t instanceof DependencyCollectionException) {
+      if (((DependencyCollectionException) t).getResult() != null) {
+        nested.addAll(((DependencyCollectionException) t).getResult().getExceptions());
+      }
+    } else if (t instanceof ArtifactDescriptorException) {
+      if (((ArtifactDescriptorException) t).getResult() != null) {
+        nested.addAll(((ArtifactDescriptorException) t).getResult().getExceptions());
+      }
+    }
+    nested.add(t.getCause());
+    for (Throwable s : t.getSuppressed()) nested.add(s);
+    nested.forEach(n -> collect(n, reasons, seen));
+  }
+
+  /**
+   * One line per repository that was skipped, empty when all were healthy.
+   */
+  public synchronized List<String> summary() {
+    List<String> lines = new ArrayList<>();
+    tripped.forEach((repository, reason) -> lines.add(String.format(
+      "Repository %s was skipped for %d lookups after %d failures: %s",
+      repository, skipped.getOrDefault(repository, 0L),
+      failures.getOrDefault(repository, maxFailures), reason)));
+    return lines;
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * Remembers which repository served the artifacts of each groupId, so that
+ * later lookups ask it first instead of paying for misses on the others.
+ *
+ * A groupId without a route of its own uses the route of its closest
+ * parent, e.g. com.example.foo falls back to com.example. The other
+ * repositories keep their declared order after the routed one, so a routed
+ * lookup that misses still finds the artifact elsewhere.
+ */
+final public class RepositoryRoutes {
+
+  public static final File DEFAULT_FILE = new File(System.getProperty("user.home"),
+      ".cache" + File.separator + "ensime-maven" + File.separator + "routes.properties");
+
+  /** Shorter prefixes, such as "com" or "org", say nothing about a repository. */
+  private static final int MIN_SEGMENTS = 2;
+
+  private final Optional<File> file;
+  private final Map<String, String> routes = new HashMap<>();
+  private final Map<String, String> learned = new HashMap<>();
+
+  private RepositoryRoutes(final Optional<File> file) {
+    this.file = file;
+  }
+
+  /** Routes that are only kept for this run. */
+  public static RepositoryRoutes inMemory() {
+    return new RepositoryRoutes(Optional.empty());
+  }
+
+  public static RepositoryRoutes load(final File file) {
+    RepositoryRoutes routes = new RepositoryRoutes(Optional.of(file));
+    routes.read().forEach(routes.routes::put);
+    return routes;
+  }
+
+  private Map<String, String> read() {
+    Map<String, String> stored = new HashMap<>();
+    file.filter(File::isFile).ifPresent(f -> {
+      Properties props = new Properties();
+      try (InputStream in = new FileInputStream(f)) {
+        props.load(in);
+        props.stringPropertyNames().forEach(k -> stored.put(k, props.getProperty(k)));
+      } catch (IOException e) {
+        // start over, the routes are only a hint
+      }
+    });
+    return stored;
+  }
+
+  /**
+   * The repository that last served the groupId, or its closest parent.
+   */
+  public synchronized Optional<String> route(final String groupId) {
+    String prefix = groupId;
+    while (true) {
+      String repository = routes.get(prefix);
+      if (repository != null) return Optional.of(repository);
+      int dot = prefix.lastIndexOf('.');
+      if (dot < 0 || prefix.substring(0, dot).split("\\.").length < MIN_SEGMENTS) {
+        return Optional.empty();
+      }
+      prefix = prefix.substring(0, dot);
+    }
+  }
+
+  public synchronized void served(final String groupId, final String repository) {
+    if (!repository.equals(routes.put(groupId, repository))) {
+      learned.put(groupId, repository);
+    }
+  }
+
+  /**
+   * The repositories with the one routed for the groupId first, the others
+   * in their original order.
+   */
+  public List<RemoteRepository> order(final String groupId,
+      final List<RemoteRepository> repositories) {
+    Optional<String> routed = route(groupId);
+    if (!routed.isPresent() || repositories.size() < 2) return repositories;
+    List<RemoteRepository> ordered = new ArrayList<>(repositories.size());
+    repositories.stream()
+      .filter(r -> r.getId().equals(routed.get())).forEach(ordered::add);
+    repositories.stream()
+      .filter(r -> !r.getId().equals(routed.get())).forEach(ordered::add);
+    return ordered;
+  }
+
+  /**
+   * Writes the routes learned in this run over the ones on disk, so
+   * concurrent builds only lose each other's updates to the same groupId.
+   */
+  public synchronized void save() throws IOException {
+    if (!file.isPresent() || learned.isEmpty()) return;
+    File target = file.get();
+    Map<String, String> merged = read();
+    merged.putAll(learned);
+    Properties props = new Properties();
+    merged.forEach(props::setProperty);
+    AtomicFiles.store(target, props, "Repository serving each groupId, used by ensime-maven");
+    learned.clear();
+  }
+}
@@ -15,28 +15,48 @@
  */
 package org.ensime.maven.plugins.ensime;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.plugin.MojoExecutionException;
-import org.apache.maven.plugin.BuildPluginManager;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.plugins.annotations.Component;
-import org.apache.maven.execution.MavenSession;
-
-import static org.twdata.maven.mojoexecutor.MojoExecutor.executeMojo;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.plugin;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.element;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.name;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.groupId;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.artifactId;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.version;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.goal;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.configuration;
-import static org.twdata.maven.mojoexecutor.MojoExecutor.executionEnvironment;
-
-@Mojo(name = "scalariform", requiresProject = true)
+
+import scalariform.formatter.ScalaFormatter;
+import scalariform.formatter.ScalaFormatter$;
+import scalariform.formatter.preferences.IFormattingPreferences;
+import scalariform.formatter.preferences.PreferencesImporterExporter;
+
+import static java.util.stream.Collectors.toList;
+
+@Mojo(name = "scalariform", requiresProject = true, threadSafe = true)
 final public class ScalariformMojo extends AbstractMojo {
 
   @Parameter(defaultValue="false")
@@ -80,60 +100,245 @@ final public class ScalariformMojo extends AbstractMojo {
   @Parameter(defaultValue="true")
   private boolean spacesWithinPatternBinders;
 
+  /**
+   * Records the content hash of every file as last formatted, plus the hash
+   * of the preferences it was formatted with, so unchanged files are skipped.
+   */
+  @Parameter(property = "ensime.scalariform.manifest",
+      defaultValue = "${project.build.directory}/scalariform-manifest.properties")
+  private File manifest;
+
+  /**
+   * Number of files formatted concurrently. 0 uses one thread per core.
+   */
+  @Parameter(property = "ensime.scalariform.threads", defaultValue = "0")
+  private int threads;
+
+  /**
+   * Only reports the files that are not formatted, failing the build if
+   * there are any. Sources are never written.
+   */
+  @Parameter(property = "ensime.scalariform.check", defaultValue = "false")
+  private boolean check;
+
+  @Parameter(defaultValue = "${project.build.sourceEncoding}")
+  private String encoding;
+
   @Parameter(defaultValue = "${project}", readonly = true)
   private MavenProject mavenProject;
 
-  @Parameter(defaultValue = "${session}", readonly = true)
-  private MavenSession mavenSession;
+  private static final String FORMATTER_VERSION = "0.1.4";
+  private static final String PREFERENCES_KEY = "#preferences";
+
+  /** The outcome of formatting one file. */
+  private static final class Formatted {
+    final Path source;
+    final Optional<String> hash;
+    final boolean changed;
+
+    Formatted(final Path source, final Optional<String> hash, final boolean changed) {
+      this.source = source;
+      this.hash = hash;
+      this.changed = changed;
+    }
+  }
+
+  private Map<String, String> preferences() {
+    Map<String, String> prefs = new LinkedHashMap<>();
+    prefs.put("alignParameters", "" + alignParameters);
+    prefs.put("alignSingleLineCaseStatements", "" + alignSingleLineCaseStatements);
+    prefs.put("alignSingleLineCaseStatements_maxArrowIndent",
+      "" + alignSingleLineCaseStatements_maxArrowIndent);
+    prefs.put("compactControlReadability", "" + compactControlReadability);
+    prefs.put("compactStringConcatenation", "" + compactStringConcatenation);
+    prefs.put("doubleIndentClassDeclaration", "" + doubleIndentClassDeclaration);
+    prefs.put("formatXml", "" + formatXml);
+    prefs.put("indentLocalDefs", "" + indentLocalDefs);
+    prefs.put("indentPackageBlocks", "" + indentPackageBlocks);
+    prefs.put("indentSpaces", "" + indentSpaces);
+    prefs.put("indentWithTabs", "" + indentWithTabs);
+    prefs.put("multilineScaladocCommentsStartOnFirstLine",
+      "" + multilineScaladocCommentsStartOnFirstLine);
+    prefs.put("placeScaladocAsterisksBeneathSecondAsterisk",
+      "" + placeScaladocAsterisksBeneathSecondAsterisk);
+    prefs.put("preserveDanglingCloseParenthesis", "" + preserveDanglingCloseParenthesis);
+    prefs.put("preserveSpaceBeforeArguments", "" + preserveSpaceBeforeArguments);
+    prefs.put("rewriteArrowSymbols", "" + rewriteArrowSymbols);
+    prefs.put("spaceBeforeColon", "" + spaceBeforeColon);
+    prefs.put("spaceInsideBrackets", "" + spaceInsideBrackets);
+    prefs.put("spaceInsideParentheses", "" + spaceInsideParentheses);
+    prefs.put("spacesWithinPatternBinders", "" + spacesWithinPatternBinders);
+    return prefs;
+  }
+
+  /**
+   * Scalariform's own keys differ from the parameter names only in using a
+   * dot for nested preferences.
+   */
+  private static IFormattingPreferences formattingPreferences(
+      final Map<String, String> prefs) {
+    Properties properties = new Properties();
+    prefs.forEach((k, v) -> properties.setProperty(k.replace('_', '.'), v));
+    return PreferencesImporterExporter.getPreferences(properties);
+  }
+
+  private static String sha256(final byte[] content) {
+    try {
+      StringBuilder hex = new StringBuilder();
+      for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private static String key(final Path source) {
+    return source.toString().replace(File.separatorChar, '/');
+  }
+
+  /**
+   * The .scala files of the module, relative to its base directory. Build
+   * directories, and nested modules, which format their own sources, are
+   * skipped, so no two modules of a parallel build touch the same file.
+   */
+  private List<Path> sources(final Path base, final Path target) throws IOException {
+    List<Path> sources = new ArrayList<>();
+    Files.walkFileTree(base, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(final Path dir,
+          final BasicFileAttributes attrs) {
+        if (dir.equals(base)) return FileVisitResult.CONTINUE;
+        boolean skip = dir.startsWith(target) ||
+          dir.getFileName().toString().equals("target") ||
+          Files.isRegularFile(dir.resolve("pom.xml"));
+        return skip ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+        if (attrs.isRegularFile() && file.toString().endsWith(".scala")) {
+          sources.add(base.relativize(file));
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    Collections.sort(sources);
+    return sources;
+  }
 
-  @Component
-  private BuildPluginManager pluginManager;
+  private Properties readManifest() {
+    Properties previous = new Properties();
+    if (manifest.isFile()) {
+      try (InputStream in = new FileInputStream(manifest)) {
+        previous.load(in);
+      } catch (IOException e) {
+        getLog().warn("Ignoring unreadable " + manifest + ": " + e.getMessage());
+        previous.clear();
+      }
+    }
+    return previous;
+  }
 
+  private void writeManifest(final Properties current) throws IOException {
+    Files.createDirectories(manifest.getParentFile().toPath());
+    try (OutputStream out = new FileOutputStream(manifest)) {
+      current.store(out, "Formatted by ensime:scalariform");
+    }
+  }
+
+  /**
+   * Formats one file, rewriting it only when the formatter changed it and
+   * we are not in check mode. Files that do not parse, or are not formatted
+   * in check mode, are left out of the manifest so they are tried again on
+   * the next run.
+   */
+  private Formatted format(final Path base, final Path source,
+      final IFormattingPreferences prefs, final Charset charset) {
+    Path file = base.resolve(source);
+    try {
+      byte[] before = Files.readAllBytes(file);
+      String formatted = ScalaFormatter$.MODULE$.format(
+        new String(before, charset), prefs,
+        ScalaFormatter.format$default$3(), ScalaFormatter.format$default$4(),
+        ScalaFormatter.format$default$5());
+      byte[] after = formatted.getBytes(charset);
+      boolean changed = !Arrays.equals(before, after);
+      if (check) {
+        return new Formatted(source,
+          changed ? Optional.empty() : Optional.of(sha256(after)), changed);
+      }
+      if (changed) AtomicFiles.write(file, staging -> Files.write(staging, after));
+      return new Formatted(source, Optional.of(sha256(after)), changed);
+    } catch (Exception e) {
+      getLog().warn("Unable to format " + file + ": " + e.getMessage());
+      return new Formatted(source, Optional.empty(), false);
+    }
+  }
+
+  /**
+   * Formats the files whose content, or the preferences, changed since the
+   * last run, in parallel on a fork-join pool. In check mode the output is
+   * only compared with what is on disk.
+   */
   @Override
   public void execute() throws MojoExecutionException, MojoFailureException {
-    executeMojo(
-      plugin(
-          groupId("org.scalariform"),
-          artifactId("scalariform-maven-plugin"),
-          version("0.1.4")
-      ),
-      goal("format"),
-      configuration(
-        element(name("alignParameters"), "" + alignParameters),
-        element(name("alignSingleLineCaseStatements"),
-          "" + alignSingleLineCaseStatements),
-        element(name("alignSingleLineCaseStatements_maxArrowIndent"),
-          "" + alignSingleLineCaseStatements_maxArrowIndent),
-        element(name("compactControlReadability"),
-          "" + compactControlReadability),
-        element(name("compactStringConcatenation"),
-          "" + compactStringConcatenation),
-        element(name("doubleIndentClassDeclaration"),
-          "" + doubleIndentClassDeclaration),
-        element(name("formatXml"), "" + formatXml),
-        element(name("indentLocalDefs"), "" + indentLocalDefs),
-        element(name("indentPackageBlocks"), "" + indentPackageBlocks),
-        element(name("indentSpaces"), "" + indentSpaces),
-        element(name("indentWithTabs"), "" + indentWithTabs),
-        element(name("multilineScaladocCommentsStartOnFirstLine"),
-          "" + multilineScaladocCommentsStartOnFirstLine),
-        element(name("placeScaladocAsterisksBeneathSecondAsterisk"),
-          "" + placeScaladocAsterisksBeneathSecondAsterisk),
-        element(name("preserveDanglingCloseParenthesis"),
-          "" + preserveDanglingCloseParenthesis),
-        element(name("preserveSpaceBeforeArguments"),
-          "" + preserveSpaceBeforeArguments),
-        element(name("rewriteArrowSymbols"), "" + rewriteArrowSymbols),
-        element(name("spaceBeforeColon"), "" + spaceBeforeColon),
-        element(name("spaceInsideBrackets"), "" + spaceInsideBrackets),
-        element(name("spaceInsideParentheses"), "" + spaceInsideParentheses),
-        element(name("spacesWithinPatternBinders"), "" + spacesWithinPatternBinders)
-      ),
-      executionEnvironment(
-          mavenProject,
-          mavenSession,
-          pluginManager
-      )
-    );
+    long start = System.nanoTime();
+    Map<String, String> prefs = preferences();
+    String prefsHash = sha256((FORMATTER_VERSION + prefs)
+      .getBytes(StandardCharsets.UTF_8));
+    Charset charset = encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding);
+    Path base = mavenProject.getBasedir().toPath();
+    Path target = Paths.get(mavenProject.getBuild().getDirectory());
+    try {
+      Properties previous = readManifest();
+      boolean prefsChanged = !prefsHash.equals(previous.getProperty(PREFERENCES_KEY));
+      Properties current = new Properties();
+      current.setProperty(PREFERENCES_KEY, prefsHash);
+
+      List<Path> dirty = new ArrayList<>();
+      List<Path> all = sources(base, target);
+      for (Path source : all) {
+        String hash = sha256(Files.readAllBytes(base.resolve(source)));
+        if (prefsChanged || !hash.equals(previous.getProperty(key(source)))) dirty.add(source);
+        else current.setProperty(key(source), hash);
+      }
+
+      IFormattingPreferences formattingPrefs = formattingPreferences(prefs);
+      ForkJoinPool pool = new ForkJoinPool(
+        threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+      List<Formatted> results;
+      try {
+        results = pool.submit(() -> dirty.parallelStream()
+          .map(source -> format(base, source, formattingPrefs, charset))
+          .collect(toList())).get();
+      } finally {
+        pool.shutdown();
+      }
+
+      List<Path> changed = new ArrayList<>();
+      for (Formatted result : results) {
+        result.hash.ifPresent(hash -> current.setProperty(key(result.source), hash));
+        if (result.changed) changed.add(result.source);
+      }
+      writeManifest(current);
+      getLog().info(String.format(
+        "Scalariform: %d of %d .scala files processed, %d %s, in %d ms (%d threads)",
+        dirty.size(), all.size(), changed.size(), check ? "not formatted" : "changed",
+        (System.nanoTime() - start) / 1000000L, pool.getParallelism()));
+      if (check && !changed.isEmpty()) {
+        changed.forEach(source -> getLog().error("Not formatted: " + base.resolve(source)));
+        throw new MojoFailureException(changed.size()
+          + " .scala files are not formatted, run ensime:scalariform");
+      }
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to format " + base, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted formatting " + base, e);
+    } catch (ExecutionException e) {
+      throw new MojoExecutionException("Unable to format " + base, e.getCause());
+    }
   }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * The resolved ENSIME server classpath, shared by every project and run in
+ * ~/.cache/ensime-maven/server-classpath.
+ *
+ * It only depends on the server version, the Scala binary version and the
+ * Scala organization, so an entry is reused as long as all of its jars are
+ * still in the local repository. SNAPSHOT servers are never cached, since
+ * their dependencies may change under the same version.
+ */
+final public class ServerClasspathCache {
+
+  public static final File DEFAULT_ROOT = new File(System.getProperty("user.home"),
+      ".cache" + File.separator + "ensime-maven" + File.separator + "server-classpath");
+
+  private final File root;
+
+  public ServerClasspathCache(final File root) {
+    this.root = root;
+  }
+
+  private static String sanitize(final String s) {
+    return s.replaceAll("[^A-Za-z0-9._-]", "_");
+  }
+
+  File entry(final String scalaOrganization, final String scalaBinaryVersion,
+      final String serverVersion) {
+    return new File(root, sanitize(scalaOrganization) + "_"
+        + sanitize(scalaBinaryVersion) + "_" + sanitize(serverVersion) + ".classpath");
+  }
+
+  private static boolean cacheable(final String serverVersion) {
+    return !serverVersion.endsWith("-SNAPSHOT");
+  }
+
+  /**
+   * The cached classpath, if there is one and none of its jars was deleted.
+   */
+  public Optional<Set<File>> get(final String scalaOrganization,
+      final String scalaBinaryVersion, final String serverVersion) {
+    File entry = entry(scalaOrganization, scalaBinaryVersion, serverVersion);
+    if (!cacheable(serverVersion) || !entry.isFile()) return Optional.empty();
+    try {
+      Set<File> jars = Files.readAllLines(entry.toPath(), StandardCharsets.UTF_8)
+        .stream()
+        .filter(l -> !l.isEmpty())
+        .map(File::new)
+        .collect(toSet());
+      if (jars.isEmpty() || !jars.stream().allMatch(File::isFile)) return Optional.empty();
+      return Optional.of(jars);
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Stores a classpath. The entry is written next to its final location and
+   * renamed into place, so concurrent builds never read half of it.
+   */
+  public void put(final String scalaOrganization, final String scalaBinaryVersion,
+      final String serverVersion, final Collection<File> jars) throws IOException {
+    if (!cacheable(serverVersion) || jars.isEmpty()) return;
+    File entry = entry(scalaOrganization, scalaBinaryVersion, serverVersion);
+    List<String> lines = jars.stream()
+      .map(File::getAbsolutePath).sorted().collect(toList());
+    AtomicFiles.write(entry.toPath(),
+      staging -> Files.write(staging, lines, StandardCharsets.UTF_8));
+  }
+}
@@ -10,16 +10,21 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
+import org.ensime.maven.plugins.ensime.jfr.Flight;
+import org.ensime.maven.plugins.ensime.jfr.Span;
 import org.ensime.maven.plugins.ensime.model.EnsimeConfig;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Comparator;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Uses maven project metadata to run the ensime server in index-only mode to pre-index the
@@ -56,90 +61,188 @@ final public class ServerIndexMojo extends AbstractMojo {
   private RepositorySystemSession session;
   @Component
   private RepositorySystem repoSystem;
-
   /**
-   * Maintains the same behavior as the sbt ensime maven plugin's "orderFiles" method.
+   * Seconds to wait for the indexer before killing it. Zero waits forever.
    */
-  private static List<File> orderJars(List<File> jars) {
-    Map<Boolean, List<File>> partitioned = jars.stream()
-        .sorted(Comparator.comparing(file -> file.getName() + file.getPath()))
-        .collect(Collectors.partitioningBy(o -> o.getName().contains("monkey")));
-    List<File> orderedJars = new ArrayList<>();
-    List<File> monkeyJars = partitioned.get(true);
-    if (monkeyJars != null) {
-      orderedJars.addAll(monkeyJars);
-    }
-    List<File> humanJars = partitioned.get(false);
-    if (humanJars != null) {
-      orderedJars.addAll(humanJars);
-    }
-    return orderedJars;
-  }
+  @Parameter(property = "ensime.index.timeout", defaultValue = "0")
+  private long timeout;
+  /**
+   * Where to write the JSON timing report of the indexing run.
+   */
+  @Parameter(property = "ensime.index.report",
+      defaultValue = "${project.build.directory}/ensime-index-report.json")
+  private File reportFile;
+  /**
+   * Index cache shared between checkouts, e.g. ~/.cache/ensime-maven.
+   * <p>
+   * When set, an .ensime_cache without an index is seeded from the entry matching the resolved
+   * classpath and server version, and a successful index is published back for other checkouts to
+   * reuse.
+   */
+  @Parameter(property = "ensime.index.sharedCache")
+  private File sharedCache;
+  /**
+   * Index even when the last generate found no classpath change since the index was written.
+   */
+  @Parameter(property = "ensime.index.force", defaultValue = "false")
+  private boolean force;
 
-  private static void launchEnsimeServer(
-      String javaCommand,
-      List<File> orderedClasspath,
-      List<String> jvmFlags) throws IOException, InterruptedException {
+  private void launchEnsimeServer(
+      List<String> fullCommand,
+      IndexRunReport report) throws IOException, InterruptedException {
+    Span span = Flight.begin(Flight.INDEX_LAUNCH, EnsimeServer.MAIN_CLASS,
+        project.getArtifactId());
     ProcessBuilder builder = new ProcessBuilder();
-    List<String> fullCommand = new ArrayList<>();
-    fullCommand.add(javaCommand);
-    // JVM flags
-    fullCommand.addAll(jvmFlags);
-    // Class path
-    fullCommand.add("-cp");
-    fullCommand.add(orderedClasspath
-        .stream()
-        .map(File::getPath)
-        .collect(Collectors.joining(":"))
-    );
-    // Main class
-    fullCommand.add("org.ensime.server.Server");
-    // Start the server and wait for it to finish.
-    builder.inheritIO()
+    // Start the server and follow its output until it finishes.
+    Process process = builder
+        .redirectErrorStream(true)
         .command(fullCommand)
-        .start()
-        .waitFor();
+        .start();
+    Thread pump = new Thread(() -> {
+      try (BufferedReader reader =
+          new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          getLog().debug(line);
+          report.line(line).ifPresent(getLog()::info);
+        }
+      } catch (IOException e) {
+        getLog().debug("Lost the ensime server output.", e);
+      }
+    }, "ensime-index-output");
+    pump.setDaemon(true);
+    pump.start();
+    try {
+      if (timeout > 0 && !process.waitFor(timeout, TimeUnit.SECONDS)) {
+        // The index-only server does not fork, so the JVM is the whole tree.
+        process.destroyForcibly().waitFor();
+        report.timedOut();
+      } else {
+        report.finished(process.waitFor());
+      }
+    } finally {
+      if (process.isAlive()) {
+        process.destroyForcibly();
+      }
+      pump.join(TimeUnit.SECONDS.toMillis(5));
+      String classpath = fullCommand.get(fullCommand.indexOf("-cp") + 1);
+      span.end(report.getExitStatus(), Arrays.stream(classpath.split(":"))
+          .mapToLong(jar -> new File(jar).length()).sum());
+    }
+  }
+
+  // the cache directory of every generated configuration, known before resolving anything
+  private File cacheDir() {
+    return new File(project.getBasedir(), ".ensime_cache");
+  }
+
+  /**
+   * Whether generate found nothing the index depends on changed since the index in the cache
+   * directory was written.
+   */
+  private boolean isIndexCurrent(File cacheDir) {
+    Optional<Long> indexedAt = EnsimeServer.indexedAt(cacheDir);
+    try {
+      return indexedAt.isPresent() && ConfigDiff.isIndexCurrent(cacheDir,
+          new File(project.getBasedir(), GenerateMojo.DOT_ENSIME), indexedAt.get());
+    } catch (IOException e) {
+      getLog().debug("Unable to tell whether the index in " + cacheDir + " is current", e);
+      return false;
+    }
   }
 
   @Override
-  public void execute() {
+  public void execute() throws MojoFailureException {
     // Preferably we would read the .ensime config but that would mean we would either write our own
     // S-Expression parser or we would have to use a library to do it. Instead, we will regenerate
     // the maven project metadata and an EnsimeConfig object from it, which will then be used for
     // starting the ensime server for indexing.
 
+    File cacheDir = cacheDir();
+    if (!force && isIndexCurrent(cacheDir)) {
+      getLog().info("The index in " + cacheDir + " is current, last change: "
+          + ConfigDiff.lastChange(cacheDir).get() + ". Use -Densime.index.force to index anyway.");
+      return;
+    }
+
     Properties properties = new Properties();
     EnsimeConfigGenerator generator = new EnsimeConfigGenerator(project,
         repoSystem, session, properties, ensimeServerVersion, ensimeScalaVersion,
         getLog());
     EnsimeConfig ensimeConfig = generator.generateConfig();
 
-    String javaCommand = String.format("%s/bin/java", ensimeConfig.getJavaHome());
-    List<File> classPathJars = new ArrayList<>();
-    classPathJars.addAll(ensimeConfig.getEnsimeServerJars());
-    classPathJars.addAll(ensimeConfig.getScalaCompilerJars());
-    classPathJars.add(new File(String.format("%s/lib/tools.jar", ensimeConfig.getJavaHome())));
-    List<File> orderedClasspath = orderJars(classPathJars);
-    List<String> jvmFlags = new ArrayList<>();
-    jvmFlags.add("-Xms4g");
-    jvmFlags.add("-Xmx4g");
-    jvmFlags.add("-XX:StringTableSize=1000003");
-    jvmFlags.add("-XX:+UnlockExperimentalVMOptions");
-    jvmFlags.add("-XX:SymbolTableSize=1000003");
-    jvmFlags.add("-Densime.config=.ensime");
+    List<String> jvmFlags = EnsimeServer.jvmFlags(ensimeConfig,
+        new File(project.getBasedir(), GenerateMojo.DOT_ENSIME));
     jvmFlags.add("-Densime.exitAfterIndex=true");
-    jvmFlags.addAll(ensimeConfig.getJavaFlags());
-    File cacheDir = ensimeConfig.getCacheDir();
     if (!cacheDir.exists() && !cacheDir.mkdirs()) {
       throw new RuntimeException(
           "Unable to create ensime cache directory. Please check permissions.");
     }
+    int jarCount = (int) ensimeConfig.getProjects().stream()
+        .flatMap(p -> p.getLibraryJars().stream())
+        .distinct()
+        .count();
+    Optional<SharedIndexCache> shared =
+        Optional.ofNullable(sharedCache).map(SharedIndexCache::new);
+    List<File> indexedClasspath = EnsimeServer.classpath(ensimeConfig);
+    ensimeConfig.getProjects().forEach(p -> indexedClasspath.addAll(p.getLibraryJars()));
+    String cacheKey = SharedIndexCache.key(indexedClasspath, ensimeServerVersion);
+    shared.ifPresent(c -> {
+      try {
+        if (c.seed(cacheKey, cacheDir)) {
+          getLog().info("Seeded " + cacheDir + " from " + c.entry(cacheKey));
+        }
+      } catch (IOException e) {
+        getLog().warn("Unable to seed the ensime cache from " + c.entry(cacheKey), e);
+      }
+    });
+    IndexRunReport report = new IndexRunReport(jarCount);
+    File indexed = new File(cacheDir, EnsimeServer.INDEXED_FILE);
+    long startedAt = System.currentTimeMillis();
     try {
-      launchEnsimeServer(javaCommand, orderedClasspath, jvmFlags);
+      Files.deleteIfExists(indexed.toPath());
+      launchEnsimeServer(EnsimeServer.command(ensimeConfig, jvmFlags), report);
     } catch (IOException e) {
+      report.failed("launch-error");
       getLog().error("Unable to start ensime server for indexing.", e);
     } catch (InterruptedException e) {
+      report.failed("interrupted");
       getLog().error("Interrupted while indexing.", e);
     }
+    if (report.isSuccess()) {
+      try {
+        Files.write(indexed.toPath(), Long.toString(startedAt).getBytes(StandardCharsets.UTF_8));
+      } catch (IOException e) {
+        getLog().warn("Unable to record the index run in " + indexed, e);
+      }
+      shared.ifPresent(c -> {
+        try {
+          if (c.publish(cacheKey, cacheDir)) {
+            getLog().info("Published " + cacheDir + " to " + c.entry(cacheKey));
+          }
+        } catch (IOException e) {
+          getLog().warn("Unable to publish the ensime cache to " + c.entry(cacheKey), e);
+        }
+      });
+    }
+    getLog().info(String.format("Indexed %d jars in %d ms: %s %s",
+        jarCount, report.getWallMillis(), report.getExitStatus(), report.getPhaseMillis()));
+    try {
+      report.write(reportFile);
+    } catch (IOException e) {
+      getLog().warn("Unable to write the index report to " + reportFile, e);
+    }
+    if (!report.isSuccess()) {
+      getLog().error("Last lines of the ensime server output:");
+      report.getTail().forEach(getLog()::error);
+    }
+    if (report.getExitStatus().equals("timeout")) {
+      throw new MojoFailureException(
+          "ENSIME indexing did not finish within " + timeout + " seconds.");
+    } else if (!report.isSuccess()) {
+      throw new MojoFailureException(
+          "ENSIME indexing failed: " + report.getExitCode()
+              .map(code -> "exit code " + code).orElse(report.getExitStatus()));
+    }
   }
 }
@@ -0,0 +1,154 @@
+package org.ensime.maven.plugins.ensime;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.ensime.maven.plugins.ensime.model.EnsimeConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts a resident ENSIME server for the project, or reuses the one that is already running.
+ * <p>
+ * The server's pid and port are recorded in .ensime_cache so that later invocations, and the stop
+ * and status goals, can find it.
+ */
+@Mojo(
+    name = "start",
+    requiresDependencyResolution = ResolutionScope.TEST,
+    requiresProject = true, aggregator = true)
+final public class ServerStartMojo extends AbstractMojo {
+
+  /**
+   * The project whose server to start.
+   */
+  @Component
+  private MavenProject project;
+  /**
+   * ENSIME server
+   */
+  @Parameter(property = "ensime.server.version",
+      defaultValue = "2.0.0-M4")
+  private String ensimeServerVersion;
+  /**
+   * Ensime Scala version
+   * <p>
+   * If set (e.g. with -Densime.scala.version), the plugin will use this value instead of trying to
+   * dynamically determine project scala version.
+   */
+  @Parameter(property = "ensime.scala.version")
+  private String ensimeScalaVersion;
+  @Parameter(defaultValue = "${repositorySystemSession}", readonly = true)
+  private RepositorySystemSession session;
+  @Component
+  private RepositorySystem repoSystem;
+  /**
+   * Seconds to wait for a new server to announce its port. A server that is still not listening
+   * after this long is considered hung and is restarted by the next start.
+   */
+  @Parameter(property = "ensime.server.startTimeout", defaultValue = "60")
+  private long startTimeout;
+
+  @Override
+  public void execute() throws MojoExecutionException {
+    File cacheDir = new File(project.getBasedir(), ".ensime_cache");
+    Properties daemon = EnsimeServer.readDaemon(cacheDir);
+    Optional<Long> runningPid = Optional.ofNullable(daemon.getProperty("pid")).map(Long::valueOf);
+    if (runningPid.isPresent() && EnsimeServer.isServer(runningPid.get())) {
+      Optional<Integer> port = EnsimeServer.announcedPort(cacheDir);
+      long started = Long.parseLong(daemon.getProperty("started", "0"));
+      if (port.isPresent() && EnsimeServer.isListening(port.get())) {
+        getLog().info(String.format("Reusing ENSIME server %d on port %d.",
+            runningPid.get(), port.get()));
+        return;
+      } else if (System.currentTimeMillis() - started < TimeUnit.SECONDS.toMillis(startTimeout)) {
+        getLog().info(String.format("ENSIME server %d is still starting up.", runningPid.get()));
+        return;
+      }
+      getLog().warn(String.format("ENSIME server %d did not start listening within %d seconds,"
+          + " restarting it.", runningPid.get(), startTimeout));
+      if (!EnsimeServer.stop(runningPid.get(), 10)) {
+        throw new MojoExecutionException("Unable to stop ENSIME server " + runningPid.get());
+      }
+    }
+    EnsimeServer.clearDaemon(cacheDir);
+
+    Properties properties = new Properties();
+    EnsimeConfigGenerator generator = new EnsimeConfigGenerator(project,
+        repoSystem, session, properties, ensimeServerVersion, ensimeScalaVersion,
+        getLog());
+    File dotEnsime = new File(project.getBasedir(), GenerateMojo.DOT_ENSIME);
+    EnsimeConfig ensimeConfig = generator.generate(dotEnsime);
+
+    if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+      throw new MojoExecutionException(
+          "Unable to create ensime cache directory. Please check permissions.");
+    }
+    // the server rewrites these once it listens, stale ones would fool the health check
+    new File(cacheDir, "http").delete();
+    new File(cacheDir, "port").delete();
+
+    Process process;
+    try {
+      process = new ProcessBuilder()
+          .command(EnsimeServer.command(ensimeConfig,
+              EnsimeServer.jvmFlags(ensimeConfig, dotEnsime)))
+          .directory(project.getBasedir())
+          .redirectInput(ProcessBuilder.Redirect.from(new File("/dev/null")))
+          .redirectErrorStream(true)
+          .redirectOutput(ProcessBuilder.Redirect.appendTo(
+              new File(cacheDir, EnsimeServer.DAEMON_LOG)))
+          .start();
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to start ensime server.", e);
+    }
+
+    Optional<Long> pid = EnsimeServer.pid(process);
+    if (!pid.isPresent()) {
+      // without a pid neither start nor stop could find this server again
+      process.destroyForcibly();
+      throw new MojoExecutionException("Unable to tell the pid of the ensime server,"
+          + " so it was stopped instead of being left running untracked.");
+    }
+    Properties started = new Properties();
+    started.setProperty("pid", Long.toString(pid.get()));
+    started.setProperty("version", ensimeServerVersion);
+    started.setProperty("started", Long.toString(System.currentTimeMillis()));
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(startTimeout);
+    Optional<Integer> port = Optional.empty();
+    while (!port.isPresent() && process.isAlive() && System.nanoTime() < deadline) {
+      port = EnsimeServer.announcedPort(cacheDir);
+      if (!port.isPresent()) {
+        try {
+          Thread.sleep(250);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    }
+    if (!process.isAlive()) {
+      throw new MojoExecutionException("ENSIME server exited with status "
+          + process.exitValue() + ", see " + new File(cacheDir, EnsimeServer.DAEMON_LOG));
+    }
+    port.ifPresent(p -> started.setProperty("port", Integer.toString(p)));
+    try {
+      EnsimeServer.writeDaemon(cacheDir, started);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to record the ensime server pid.", e);
+    }
+    getLog().info(String.format("Started ENSIME server %d on port %s.", pid.get(),
+        port.map(String::valueOf).orElse("(not yet listening)")));
+  }
+}
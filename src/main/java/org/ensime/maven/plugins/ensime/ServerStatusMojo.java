@@ -0,0 +1,45 @@
+package org.ensime.maven.plugins.ensime;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Reports whether the resident ENSIME server started by the start goal is up.
+ */
+@Mojo(name = "status", requiresProject = true, aggregator = true)
+final public class ServerStatusMojo extends AbstractMojo {
+
+  /**
+   * The project whose server to inspect.
+   */
+  @Component
+  private MavenProject project;
+
+  @Override
+  public void execute() {
+    File cacheDir = new File(project.getBasedir(), ".ensime_cache");
+    Properties daemon = EnsimeServer.readDaemon(cacheDir);
+    Optional<Long> pid = Optional.ofNullable(daemon.getProperty("pid")).map(Long::valueOf);
+    if (!pid.isPresent()) {
+      getLog().info("No ENSIME server is running.");
+    } else if (!EnsimeServer.isServer(pid.get())) {
+      getLog().info("ENSIME server " + pid.get() + " is no longer running.");
+      EnsimeServer.clearDaemon(cacheDir);
+    } else {
+      Optional<Integer> port = EnsimeServer.announcedPort(cacheDir);
+      if (port.isPresent() && EnsimeServer.isListening(port.get())) {
+        getLog().info(String.format("ENSIME server %d (%s) is healthy on port %d.",
+            pid.get(), daemon.getProperty("version", "unknown version"), port.get()));
+      } else {
+        getLog().warn(String.format("ENSIME server %d is running but not listening%s.",
+            pid.get(), port.map(p -> " on port " + p).orElse("")));
+      }
+    }
+  }
+}
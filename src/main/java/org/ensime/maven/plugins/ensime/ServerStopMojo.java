@@ -0,0 +1,42 @@
+package org.ensime.maven.plugins.ensime;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Stops the resident ENSIME server started by the start goal.
+ */
+@Mojo(name = "stop", requiresProject = true, aggregator = true)
+final public class ServerStopMojo extends AbstractMojo {
+
+  /**
+   * The project whose server to stop.
+   */
+  @Component
+  private MavenProject project;
+
+  @Override
+  public void execute() throws MojoExecutionException {
+    File cacheDir = new File(project.getBasedir(), ".ensime_cache");
+    Properties daemon = EnsimeServer.readDaemon(cacheDir);
+    Optional<Long> pid = Optional.ofNullable(daemon.getProperty("pid")).map(Long::valueOf);
+    if (!pid.isPresent() || !EnsimeServer.isServer(pid.get())) {
+      getLog().info("No ENSIME server is running.");
+    } else {
+      if (!EnsimeServer.stop(pid.get(), 10)) {
+        throw new MojoExecutionException("Unable to stop ENSIME server " + pid.get());
+      }
+      getLog().info("Stopped ENSIME server " + pid.get());
+    }
+    EnsimeServer.clearDaemon(cacheDir);
+    new File(cacheDir, "http").delete();
+    new File(cacheDir, "port").delete();
+  }
+}
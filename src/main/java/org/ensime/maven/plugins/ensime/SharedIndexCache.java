@@ -0,0 +1,173 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * An index cache shared between checkouts, e.g. in ~/.cache/ensime-maven.
+ *
+ * Entries are keyed by a hash of the resolved classpath and the ENSIME server
+ * version, so any worktree resolving the same jars can start from an index
+ * somebody else already built. Entries are written once and never modified:
+ * the server updates its database in place, so checkouts get their own
+ * copy rather than a hard link into the shared entry.
+ *
+ * Only the server's index files are shared: the rest of .ensime_cache
+ * describes a running server or one checkout's own generation.
+ */
+final public class SharedIndexCache {
+
+  private final File root;
+
+  public SharedIndexCache(final File root) {
+    this.root = root;
+  }
+
+  /**
+   * Computes the cache key for a classpath. Paths are sorted so the key does
+   * not depend on resolution order, and sizes are included so a re-deployed
+   * SNAPSHOT does not reuse a stale index.
+   */
+  public static String key(final Collection<File> classpath,
+      final String serverVersion) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(serverVersion.getBytes(StandardCharsets.UTF_8));
+      classpath.stream()
+        .map(f -> f.getAbsolutePath() + "|" + f.length())
+        .sorted().distinct()
+        .forEach(s -> {
+          digest.update((byte) '\n');
+          digest.update(s.getBytes(StandardCharsets.UTF_8));
+        });
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest.digest()) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  public File entry(final String key) {
+    return new File(root, key);
+  }
+
+  /**
+   * Populates a cache directory that has no index yet from the shared entry,
+   * if any.
+   *
+   * @return true when the cache directory was seeded
+   */
+  public boolean seed(final String key, final File cacheDir) throws IOException {
+    File entry = entry(key);
+    if (!entry.isDirectory() || hasIndex(cacheDir)) return false;
+    copyTree(entry.toPath(), cacheDir.toPath(), EnsimeServer::isIndexFile);
+    return true;
+  }
+
+  /**
+   * Publishes a freshly built cache directory under the given key. The entry
+   * is assembled next to its final location and renamed into place, so
+   * concurrent readers never see a half-written index.
+   *
+   * @return true when a new entry was published
+   */
+  public boolean publish(final String key, final File cacheDir) throws IOException {
+    File entry = entry(key);
+    if (entry.exists() || !cacheDir.isDirectory()) return false;
+    Files.createDirectories(root.toPath());
+    Path staging = root.toPath().resolve(".tmp-" + UUID.randomUUID());
+    try {
+      copyTree(cacheDir.toPath(), staging, EnsimeServer::isIndexFile);
+      try {
+        Files.move(staging, entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException ex) {
+        Files.move(staging, entry.toPath());
+      }
+      return true;
+    } catch (FileAlreadyExistsException ex) {
+      // another checkout published the same classpath first
+      return false;
+    } finally {
+      deleteTree(staging);
+    }
+  }
+
+  private static boolean hasIndex(final File dir) {
+    String[] children = dir.list();
+    return children != null && Stream.of(children)
+      .anyMatch(name -> EnsimeServer.isIndexFile(Paths.get(name)));
+  }
+
+  private static void copyTree(final Path from, final Path to,
+      final Predicate<Path> include) throws IOException {
+    List<Path> paths;
+    try (Stream<Path> walk = Files.walk(from)) {
+      paths = walk.collect(toList());
+    }
+    try {
+      paths.stream()
+        .filter(p -> include.test(from.relativize(p)))
+        .forEach(p -> {
+          Path target = to.resolve(from.relativize(p).toString());
+          try {
+            if (Files.isDirectory(p)) Files.createDirectories(target);
+            else {
+              Files.createDirectories(target.getParent());
+              Files.copy(p, target, StandardCopyOption.REPLACE_EXISTING,
+                  StandardCopyOption.COPY_ATTRIBUTES);
+            }
+          } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+          }
+        });
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
+  }
+
+  private static void deleteTree(final Path dir) throws IOException {
+    if (!Files.exists(dir)) return;
+    List<Path> paths;
+    try (Stream<Path> walk = Files.walk(dir)) {
+      paths = walk.sorted((a, b) -> b.compareTo(a)).collect(toList());
+    }
+    for (Path p : paths) {
+      Files.deleteIfExists(p);
+    }
+  }
+}
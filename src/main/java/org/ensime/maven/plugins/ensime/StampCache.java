@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * A value computed from each file's content, kept in a properties file and
+ * reused until the file's size or mtime changes.
+ *
+ * Only the values looked up or computed since the cache was loaded are
+ * saved, so files that are no longer used drop out.
+ */
+final public class StampCache {
+
+  private final File file;
+  private final Map<String, String> stored = new HashMap<>();
+  private final Map<String, String> current = new ConcurrentHashMap<>();
+
+  public StampCache(final File file) {
+    this.file = file;
+    if (file.isFile()) {
+      Properties props = new Properties();
+      try (InputStream in = new FileInputStream(file)) {
+        props.load(in);
+        props.stringPropertyNames().forEach(k -> stored.put(k, props.getProperty(k)));
+      } catch (IOException e) {
+        // every value is computed again
+      }
+    }
+  }
+
+  // entries are stored as "<size> <mtime> <value>"
+  private static String stamp(final File f) {
+    return f.length() + " " + f.lastModified() + " ";
+  }
+
+  private static String valueOf(final String entry) {
+    return entry.substring(entry.indexOf(' ', entry.indexOf(' ') + 1) + 1);
+  }
+
+  /**
+   * The value stored for the file, unless it changed since.
+   */
+  public Optional<String> get(final File f) {
+    String path = f.getAbsolutePath();
+    String entry = stored.get(path);
+    if (entry == null || !entry.startsWith(stamp(f))) return Optional.empty();
+    current.put(path, entry);
+    return Optional.of(valueOf(entry));
+  }
+
+  public void put(final File f, final String value) {
+    current.put(f.getAbsolutePath(), stamp(f) + value);
+  }
+
+  /** The values as they were loaded, by absolute path. */
+  public Map<String, String> stored() {
+    Map<String, String> values = new HashMap<>();
+    stored.forEach((path, entry) -> values.put(path, valueOf(entry)));
+    return values;
+  }
+
+  /** The values looked up or computed since, by absolute path. */
+  public Map<String, String> current() {
+    Map<String, String> values = new HashMap<>();
+    current.forEach((path, entry) -> values.put(path, valueOf(entry)));
+    return values;
+  }
+
+  /**
+   * Replaces the file with the values looked up or computed since it was
+   * loaded.
+   */
+  public void save(final String comment) throws IOException {
+    Properties props = new Properties();
+    current.forEach(props::setProperty);
+    AtomicFiles.store(file, props, comment);
+  }
+
+  /**
+   * Runs the action on every file, on at most the given number of threads.
+   */
+  public static void forEach(final Collection<File> files, final int threads,
+      final Consumer<File> action) throws InterruptedException {
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      pool.submit(() -> files.parallelStream().forEach(action)).get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The concrete versions that version ranges and SNAPSHOT versions resolved
+ * to, so their repository metadata is read once per run instead of once per
+ * module.
+ *
+ * Resolutions are also kept in a file and reused by later runs for a
+ * configurable interval, independently of Maven's update policy.
+ */
+final public class VersionCache {
+
+  public static final File DEFAULT_FILE = new File(System.getProperty("user.home"),
+      ".cache" + File.separator + "ensime-maven" + File.separator + "versions.properties");
+
+  private final Optional<File> file;
+  private final long intervalMillis;
+  private final Map<String, CompletableFuture<Optional<String>>> run =
+    new ConcurrentHashMap<>();
+  private final Map<String, String> stored = new HashMap<>();
+  private final Map<String, String> learned = new HashMap<>();
+
+  private VersionCache(final Optional<File> file, final long intervalMillis) {
+    this.file = file;
+    this.intervalMillis = intervalMillis;
+  }
+
+  /** Versions that are only remembered for this run. */
+  public static VersionCache inMemory() {
+    return new VersionCache(Optional.empty(), 0);
+  }
+
+  /**
+   * @param intervalMinutes how long a stored version is trusted, 0 only
+   *                        remembers versions for the run
+   */
+  public static VersionCache load(final File file, final int intervalMinutes) {
+    VersionCache cache = new VersionCache(Optional.of(file),
+        TimeUnit.MINUTES.toMillis(Math.max(0, intervalMinutes)));
+    cache.stored.putAll(cache.read());
+    return cache;
+  }
+
+  /**
+   * Whether the version has to be looked up in repository metadata.
+   */
+  public static boolean isDynamic(final String version) {
+    return version != null && (version.startsWith("[") || version.startsWith("(")
+        || version.endsWith("-SNAPSHOT"));
+  }
+
+  private Map<String, String> read() {
+    Map<String, String> entries = new HashMap<>();
+    file.filter(File::isFile).ifPresent(f -> {
+      Properties props = new Properties();
+      try (InputStream in = new FileInputStream(f)) {
+        props.load(in);
+        props.stringPropertyNames().forEach(k -> entries.put(k, props.getProperty(k)));
+      } catch (IOException e) {
+        // resolve everything again
+      }
+    });
+    return entries;
+  }
+
+  // entries are stored as "<resolved at, epoch millis> <version>"
+  private synchronized Optional<String> fresh(final String key) {
+    String entry = stored.get(key);
+    if (entry == null || intervalMillis <= 0) return Optional.empty();
+    int space = entry.indexOf(' ');
+    try {
+      long resolvedAt = Long.parseLong(entry.substring(0, space));
+      if (System.currentTimeMillis() - resolvedAt > intervalMillis) return Optional.empty();
+      return Optional.of(entry.substring(space + 1));
+    } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+      return Optional.empty();
+    }
+  }
+
+  private synchronized void resolved(final String key, final String version) {
+    learned.put(key, System.currentTimeMillis() + " " + version);
+  }
+
+  /**
+   * The version the key resolved to earlier in this run or within the
+   * interval, otherwise the result of the lookup. A lookup runs at most once
+   * per key and run, and only found versions are stored.
+   */
+  public Optional<String> get(final String key, final Supplier<Optional<String>> lookup) {
+    // the lookup reads repository metadata, so it runs outside the map:
+    // other keys are never held up, and threads asking for this one wait
+    CompletableFuture<Optional<String>> mine = new CompletableFuture<>();
+    CompletableFuture<Optional<String>> theirs = run.putIfAbsent(key, mine);
+    if (theirs != null) return theirs.join();
+    try {
+      Optional<String> version = fresh(key);
+      if (!version.isPresent()) {
+        version = lookup.get();
+        version.ifPresent(v -> resolved(key, v));
+      }
+      mine.complete(version);
+      return version;
+    } catch (RuntimeException e) {
+      run.remove(key, mine);
+      mine.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Writes the versions resolved in this run over the ones on disk.
+   */
+  public synchronized void save() throws IOException {
+    if (!file.isPresent() || learned.isEmpty()) return;
+    File target = file.get();
+    Map<String, String> merged = read();
+    merged.putAll(learned);
+    Properties props = new Properties();
+    merged.forEach(props::setProperty);
+    AtomicFiles.store(target, props, "Versions of ranges and SNAPSHOTs, used by ensime-maven");
+    learned.clear();
+  }
+}
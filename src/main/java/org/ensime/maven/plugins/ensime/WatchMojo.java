@@ -0,0 +1,199 @@
+package org.ensime.maven.plugins.ensime;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.DefaultProjectBuildingRequest;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectBuilder;
+import org.apache.maven.project.ProjectBuildingException;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.ensime.maven.plugins.ensime.model.EnsimeConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Keeps .ensime up to date while the poms of the reactor are edited.
+ * <p>
+ * Only the modules whose pom changed, and the modules inheriting from it, are re-read and
+ * re-resolved. The JVM stays warm between edits, so resolution caches stay hot too. Runs until
+ * interrupted.
+ */
+@Mojo(
+    name = "watch",
+    requiresDependencyResolution = ResolutionScope.TEST,
+    requiresProject = true, aggregator = true)
+final public class WatchMojo extends AbstractMojo {
+
+  /**
+   * The project whose project files to keep up to date.
+   */
+  @Component
+  private MavenProject project;
+  /**
+   * ENSIME server
+   */
+  @Parameter(property = "ensime.server.version",
+      defaultValue = "2.0.0-M4")
+  private String ensimeServerVersion;
+  /**
+   * Ensime Scala version
+   * <p>
+   * If set (e.g. with -Densime.scala.version), the plugin will use this value instead of trying to
+   * dynamically determine project scala version.
+   */
+  @Parameter(property = "ensime.scala.version")
+  private String ensimeScalaVersion;
+  @Parameter(defaultValue = "${repositorySystemSession}", readonly = true)
+  private RepositorySystemSession session;
+  @Parameter(defaultValue = "${session}", readonly = true)
+  private MavenSession mavenSession;
+  @Component
+  private RepositorySystem repoSystem;
+  @Component
+  private ProjectBuilder projectBuilder;
+  /**
+   * Also watch each module's src directory, so newly created source roots are picked up.
+   */
+  @Parameter(property = "ensime.watch.sources", defaultValue = "false")
+  private boolean watchSources;
+  /**
+   * Milliseconds without further changes before regenerating.
+   */
+  @Parameter(property = "ensime.watch.debounce", defaultValue = "500")
+  private long debounce;
+
+  @Override
+  public void execute() throws MojoExecutionException {
+    Properties properties = new Properties();
+    EnsimeConfigGenerator generator = new EnsimeConfigGenerator(project,
+        repoSystem, session, properties, ensimeServerVersion, ensimeScalaVersion,
+        getLog());
+    File dotEnsime = new File(project.getBasedir(), GenerateMojo.DOT_ENSIME);
+    EnsimeConfig config = generator.generate(dotEnsime);
+
+    // module directory -> current model of that module
+    Map<Path, MavenProject> reactor = new HashMap<>();
+    List<MavenProject> collected = new ArrayList<>(project.getCollectedProjects());
+    collected.add(project);
+    collected.forEach(p -> reactor.put(p.getBasedir().toPath().toAbsolutePath(), p));
+
+    try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+      Map<WatchKey, MavenProject> keys = new HashMap<>();
+      for (MavenProject module : reactor.values()) {
+        Path dir = module.getBasedir().toPath().toAbsolutePath();
+        keys.put(dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), module);
+        if (watchSources) {
+          for (String sub : new String[] {"src", "src/main", "src/test"}) {
+            File src = new File(module.getBasedir(), sub);
+            if (src.isDirectory()) {
+              keys.put(src.toPath().register(watcher, ENTRY_CREATE, ENTRY_DELETE), module);
+            }
+          }
+        }
+      }
+      getLog().info(String.format("Watching %d modules for changes, press Ctrl-C to stop.",
+          reactor.size()));
+
+      while (!Thread.currentThread().isInterrupted()) {
+        Set<MavenProject> changed = new LinkedHashSet<>();
+        WatchKey key = watcher.take();
+        // debounce: keep collecting until the tree has been quiet for a while
+        while (key != null) {
+          MavenProject module = keys.get(key);
+          boolean isSourceDir =
+              !key.watchable().equals(module.getBasedir().toPath().toAbsolutePath());
+          for (WatchEvent<?> event : key.pollEvents()) {
+            Path name = (Path) event.context();
+            if (isSourceDir || (name != null && name.toString().equals("pom.xml"))) {
+              changed.add(module);
+            }
+          }
+          key.reset();
+          key = watcher.poll(debounce, TimeUnit.MILLISECONDS);
+        }
+        if (changed.isEmpty()) {
+          continue;
+        }
+
+        List<MavenProject> affected = new ArrayList<>();
+        for (MavenProject module : withChildren(changed, reactor.values())) {
+          try {
+            MavenProject reread = reread(module);
+            reactor.put(reread.getBasedir().toPath().toAbsolutePath(), reread);
+            keys.replaceAll((k, v) -> v == module ? reread : v);
+            affected.add(reread);
+          } catch (ProjectBuildingException e) {
+            getLog().warn("Unable to read " + module.getFile() + ", keeping its old entry.", e);
+          }
+        }
+        if (affected.isEmpty()) {
+          continue;
+        }
+        long start = System.nanoTime();
+        config = generator.regenerateConfig(config, affected);
+        generator.write(config, dotEnsime);
+        getLog().info(String.format("Regenerated %s for %d modules in %d ms.",
+            GenerateMojo.DOT_ENSIME, affected.size(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+      }
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to watch the reactor poms.", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * The changed modules plus every module inheriting from one of them.
+   */
+  private static Set<MavenProject> withChildren(Set<MavenProject> changed,
+      Iterable<MavenProject> reactor) {
+    Set<File> poms = new LinkedHashSet<>();
+    changed.forEach(p -> poms.add(p.getFile().getAbsoluteFile()));
+    Set<MavenProject> affected = new LinkedHashSet<>(changed);
+    for (MavenProject module : reactor) {
+      for (MavenProject parent = module.getParent(); parent != null;
+          parent = parent.getParent()) {
+        if (parent.getFile() != null && poms.contains(parent.getFile().getAbsoluteFile())) {
+          affected.add(module);
+          break;
+        }
+      }
+    }
+    return affected;
+  }
+
+  private MavenProject reread(MavenProject module) throws ProjectBuildingException {
+    ProjectBuildingRequest request =
+        new DefaultProjectBuildingRequest(mavenSession.getProjectBuildingRequest());
+    request.setResolveDependencies(false);
+    MavenProject reread = projectBuilder.build(module.getFile(), request).getProject();
+    reread.setCollectedProjects(module.getCollectedProjects());
+    return reread;
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime.formatter;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Map;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Minimal JSON writer for the reports the plugin leaves in target/ and
+ * .ensime_cache. Values may be maps (keys are written in iteration order),
+ * collections, numbers, booleans, files, strings or null.
+ */
+final public class JsonFormatter {
+
+  private JsonFormatter() {}
+
+  private static String toJson(final String s) {
+    StringBuilder builder = new StringBuilder("\"");
+    for (char c : s.toCharArray()) {
+      switch (c) {
+        case '"':  builder.append("\\\""); break;
+        case '\\': builder.append("\\\\"); break;
+        case '\n': builder.append("\\n"); break;
+        case '\r': builder.append("\\r"); break;
+        case '\t': builder.append("\\t"); break;
+        default:
+          if (c < 0x20) builder.append(String.format("\\u%04x", (int) c));
+          else builder.append(c);
+      }
+    }
+    return builder.append("\"").toString();
+  }
+
+  public static String toJson(final Object o) {
+    if (o == null)
+      return "null";
+    else if (o instanceof Map) {
+      return ((Map<?, ?>) o).entrySet().stream()
+        .map(e -> toJson(String.valueOf(e.getKey())) + ": " + toJson(e.getValue()))
+        .collect(joining(", ", "{", "}"));
+    } else if (o instanceof Collection) {
+      return ((Collection<?>) o).stream()
+        .map(v -> toJson(v)).collect(joining(", ", "[", "]"));
+    } else if (o instanceof Number || o instanceof Boolean)
+      return o.toString();
+    else if (o instanceof File)
+      return toJson(((File) o).getAbsolutePath());
+    else
+      return toJson(o.toString());
+  }
+}
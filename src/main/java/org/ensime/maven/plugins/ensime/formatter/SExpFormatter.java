@@ -20,12 +20,17 @@ import java.util.Optional;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
 import org.ensime.maven.plugins.ensime.model.EnsimeProject;
 import org.ensime.maven.plugins.ensime.model.EnsimeProjectId;
 import org.ensime.maven.plugins.ensime.model.EnsimeConfig;
 import org.ensime.maven.plugins.ensime.model.EnsimeModule;
+import org.ensime.maven.plugins.ensime.jfr.Flight;
+import org.ensime.maven.plugins.ensime.jfr.Span;
 
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.partitioningBy;
@@ -33,9 +38,45 @@ import static java.util.stream.Collectors.joining;
 
 final public class SExpFormatter {
 
+  /**
+   * Which module sections to write. ENSIME 1.x servers read the legacy
+   * :subprojects form and 2.x servers read :projects; writing both doubles
+   * the size of the file.
+   */
+  public enum Sections {
+    ALL, PROJECTS, SUBPROJECTS;
+
+    public boolean projects() { return this != SUBPROJECTS; }
+
+    public boolean subprojects() { return this != PROJECTS; }
+
+    /**
+     * The sections a server version reads, or all of them when the version
+     * cannot be parsed.
+     */
+    public static Sections forServerVersion(final String version) {
+      try {
+        int major = Integer.parseInt(version.trim().split("[.-]")[0]);
+        return major >= 2 ? PROJECTS : SUBPROJECTS;
+      } catch (NumberFormatException | NullPointerException e) {
+        return ALL;
+      }
+    }
+
+    /**
+     * Parses "all", "projects" or "subprojects", or "auto" to pick the
+     * sections from the server version.
+     */
+    public static Sections parse(final String name, final String serverVersion) {
+      if (name == null || name.trim().isEmpty() || name.trim().equalsIgnoreCase("auto"))
+        return forServerVersion(serverVersion);
+      return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+  }
+
   // normalise and ensure monkeys go first
   // (bit of a hack to do it here, maybe best when creating)
-  private static List<File> orderFiles(final Collection<File> ss) {
+  static List<File> orderFiles(final Collection<File> ss) {
     final Comparator<File> comparator = (f1, f2) -> {
       String f1Name = f1.getName() + f1.getPath();
       String f2Name = f2.getName() + f2.getPath();
@@ -72,24 +113,33 @@ final public class SExpFormatter {
       return ss.stream().map(s -> toSExp(s)).collect(joining(" ", "(", ")"));
   }
 
-  private static String msToSExp(final Collection<EnsimeModule> ss) {
+  // below this many entries the fork-join overhead outweighs the work
+  static final int PARALLEL_THRESHOLD = 4;
+
+  // entries are sorted up front and rendered in parallel; the joining
+  // collector respects encounter order, so the output is the same as a
+  // sequential rendering
+  static <T> String sortedToSExp(final Collection<T> ss,
+      final Comparator<? super T> order, final Function<T, String> render) {
     if (ss.isEmpty())
       return "nil";
     else {
-      return ss.stream()
-        .sorted((f1, f2) -> f1.getName().compareTo(f2.getName()))
-        .map(s -> toSExp(s)).collect(joining(" ", "(", ")"));
+      List<T> sorted = ss.stream().sorted(order).collect(toList());
+      Stream<T> stream = sorted.size() < PARALLEL_THRESHOLD
+        ? sorted.stream() : sorted.parallelStream();
+      return stream.map(render).collect(joining(" ", "(", ")"));
     }
   }
 
+  private static String msToSExp(final Collection<EnsimeModule> ss) {
+    return sortedToSExp(ss, (f1, f2) -> f1.getName().compareTo(f2.getName()),
+      SExpFormatter::toSExp);
+  }
+
   private static String psToSExp(final Collection<EnsimeProject> ss) {
-    if (ss.isEmpty())
-      return "nil";
-    else {
-      return ss.stream()
-        .sorted((p1, p2) -> p1.getId().toString().compareTo(p2.getId().toString()))
-        .map(s -> toSExp(s)).collect(joining(" ", "(", ")"));
-    }
+    return sortedToSExp(ss,
+      (p1, p2) -> p1.getId().toString().compareTo(p2.getId().toString()),
+      SExpFormatter::toSExp);
   }
 
   private static String fToSExp(final String key, final Optional<File> op) {
@@ -104,8 +154,34 @@ final public class SExpFormatter {
     return b? "t" : "nil";
   }
 
-  // a lot of legacy key names and conventions
   public static String toSExp(final EnsimeConfig c) {
+    return toSExp(c, Sections.forServerVersion(c.getEnsimeServerVersion()));
+  }
+
+  // a lot of legacy key names and conventions
+  public static String toSExp(final EnsimeConfig c, final Sections sections) {
+    Span span = Flight.begin(Flight.FORMAT, null, c.getName());
+    StringBuilder builder = new StringBuilder(headerToSExp(c));
+
+    if (sections.subprojects()) {
+      builder.append(":subprojects ");
+      builder.append(msToSExp(c.getModules().values()));
+      if (sections.projects()) builder.append("\n");
+    }
+    if (sections.projects()) {
+      builder.append(":projects ");
+      builder.append(psToSExp(c.getProjects()));
+    }
+    builder.append(")");
+
+    span.end("formatted", builder.length());
+    return builder.toString();
+  }
+
+  /**
+   * Everything before the module sections, including the opening paren.
+   */
+  static String headerToSExp(final EnsimeConfig c) {
     StringBuilder builder = new StringBuilder();
 
     builder.append("(:root-dir ");
@@ -147,18 +223,12 @@ final public class SExpFormatter {
     builder.append(":compiler-args ");
     builder.append(ssToSExp(c.getScalacOptions()));
     builder.append("\n");
-    builder.append(":subprojects ");
-    builder.append(msToSExp(c.getModules().values()));
-    builder.append("\n");
-    builder.append(":projects ");
-    builder.append(psToSExp(c.getProjects()));
-    builder.append(")");
 
     return builder.toString();
   }
 
   // a lot of legacy key names and conventions
-  private static String toSExp(final EnsimeModule m) {
+  static String toSExp(final EnsimeModule m) {
     List<File> roots = new ArrayList<>();
     roots.addAll(m.getMainRoots());
     roots.addAll(m.getTestRoots());
@@ -198,7 +268,7 @@ final public class SExpFormatter {
     return builder.toString();
   }
 
-  private static String toSExp(final EnsimeProject p) {
+  static String toSExp(final EnsimeProject p) {
     StringBuilder builder = new StringBuilder();
 
     builder.append("(:id ");
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime.formatter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.ensime.maven.plugins.ensime.formatter.SExpFormatter.Sections;
+import org.ensime.maven.plugins.ensime.model.EnsimeConfig;
+import org.ensime.maven.plugins.ensime.model.EnsimeModule;
+import org.ensime.maven.plugins.ensime.model.EnsimeProject;
+
+/**
+ * Writes the same configuration as SExpFormatter one module at a time, so
+ * the caller can drop each module as soon as it has been written.
+ *
+ * Modules go straight to the output and must be given in name order.
+ * Projects are rendered right away into a spool file, and only their
+ * offsets are kept until close() copies them out in id order.
+ */
+final public class SExpStreamWriter implements Closeable {
+
+  private final Writer out;
+  private final Sections sections;
+  private final File spoolFile;
+  private final RandomAccessFile spool;
+  // id -> (offset, length) of each rendered project in the spool
+  private final Map<String, List<long[]>> projects = new TreeMap<>();
+  private int modules = 0;
+
+  public SExpStreamWriter(final Writer out, final EnsimeConfig header,
+      final Sections sections) throws IOException {
+    this.out = out;
+    this.sections = sections;
+    this.spoolFile = File.createTempFile("ensime-projects", ".spool");
+    this.spool = new RandomAccessFile(spoolFile, "rw");
+    write(SExpFormatter.headerToSExp(header));
+    if (sections.subprojects()) write(":subprojects ");
+  }
+
+  private void write(final String s) throws IOException {
+    out.write(s.replaceAll("\r\n", "\n"));
+  }
+
+  public void module(final EnsimeModule module) throws IOException {
+    if (!sections.subprojects()) return;
+    write(modules++ == 0 ? "(" : " ");
+    write(SExpFormatter.toSExp(module));
+  }
+
+  public void project(final EnsimeProject project) throws IOException {
+    if (!sections.projects()) return;
+    byte[] rendered = SExpFormatter.toSExp(project).getBytes(StandardCharsets.UTF_8);
+    long offset = spool.length();
+    spool.seek(offset);
+    spool.write(rendered);
+    projects.computeIfAbsent(project.getId().toString(), k -> new ArrayList<>())
+      .add(new long[]{ offset, rendered.length });
+  }
+
+  /**
+   * Ends the module sections and the configuration, and closes the output.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (sections.subprojects()) {
+        write(modules == 0 ? "nil" : ")");
+        if (sections.projects()) write("\n");
+      }
+      if (sections.projects()) {
+        write(":projects ");
+        if (projects.isEmpty()) write("nil");
+        boolean first = true;
+        for (List<long[]> entries : projects.values()) {
+          for (long[] entry : entries) {
+            byte[] rendered = new byte[(int) entry[1]];
+            spool.seek(entry[0]);
+            spool.readFully(rendered);
+            write(first ? "(" : " ");
+            write(new String(rendered, StandardCharsets.UTF_8));
+            first = false;
+          }
+        }
+        if (!projects.isEmpty()) write(")");
+      }
+      write(")\n");
+    } finally {
+      try {
+        spool.close();
+        spoolFile.delete();
+      } finally {
+        out.close();
+      }
+    }
+  }
+}
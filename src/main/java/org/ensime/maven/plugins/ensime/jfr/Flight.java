@@ -0,0 +1,66 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime.jfr;
+
+/**
+ * Emits Java Flight Recorder events for the plugin's hot spots, so that
+ * recording a build with -XX:StartFlightRecording shows them next to
+ * Aether's own work.
+ *
+ * The events live in src/main/jfr, which the build compiles against jdk.jfr
+ * and so needs JDK 11 or later. On a JVM without the flight recorder every
+ * span is a no-op.
+ */
+final public class Flight {
+
+  public static final String RESOLVE = "Resolve";
+  public static final String RESOLVE_ALL = "ResolveAll";
+  public static final String SCALA_VERSION = "ScalaVersion";
+  public static final String JAVA_HOME = "JavaHome";
+  public static final String FORMAT = "Format";
+  public static final String INDEX_LAUNCH = "IndexLaunch";
+
+  private static final Recorder RECORDER = recorder();
+
+  private Flight() {}
+
+  private static Recorder recorder() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      return (Recorder) Class.forName(Flight.class.getPackage().getName() + ".JfrRecorder")
+        .getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return null;
+    }
+  }
+
+  /** Whether the events were found and jdk.jfr is there to record them. */
+  static boolean isAvailable() {
+    return RECORDER != null;
+  }
+
+  /**
+   * Starts timing an operation.
+   *
+   * @param type one of the constants of this class
+   * @param coordinates what the operation works on, e.g. an artifact
+   * @param module the module it is done for, may be null
+   */
+  public static Span begin(final String type, final String coordinates,
+      final String module) {
+    return RECORDER == null ? Span.NOOP : RECORDER.begin(type, coordinates, module);
+  }
+}
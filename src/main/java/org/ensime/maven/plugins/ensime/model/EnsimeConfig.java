@@ -53,8 +53,8 @@ final public class EnsimeConfig {
 
     this.root                = root;
     this.cacheDir            = cacheDir;
-    this.scalaCompilerJars   = scalaCompilerJars;
-    this.ensimeServerJars    = ensimeServerJars;
+    this.scalaCompilerJars   = FileSet.of(scalaCompilerJars);
+    this.ensimeServerJars    = FileSet.of(ensimeServerJars);
     this.ensimeServerVersion = ensimeServerVersion;
     this.name                = name;
     this.scalaVersion        = scalaVersion;
@@ -63,7 +63,7 @@ final public class EnsimeConfig {
     this.javaHome            = javaHome;
     this.javaFlags           = javaFlags;
     this.javacOptions        = javacOptions;
-    this.javaSrc             = javaSrc;
+    this.javaSrc             = FileSet.of(javaSrc);
     this.projects            = projects;
   }
 
@@ -45,16 +45,16 @@ final public class EnsimeModule {
       final Set<File> sourceJars,
       final Set<File> docJars) {
     this.name           = name;
-    this.mainRoots      = mainRoots;
-    this.testRoots      = testRoots;
-    this.targets        = targets;
-    this.testTargets    = testTargets;
+    this.mainRoots      = FileSet.of(mainRoots);
+    this.testRoots      = FileSet.of(testRoots);
+    this.targets        = FileSet.of(targets);
+    this.testTargets    = FileSet.of(testTargets);
     this.dependsOnNames = dependsOnNames;
-    this.compileJars    = compileJars;
-    this.runtimeJars    = runtimeJars;
-    this.testJars       = testJars;
-    this.sourceJars     = sourceJars;
-    this.docJars        = docJars;
+    this.compileJars    = FileSet.of(compileJars);
+    this.runtimeJars    = FileSet.of(runtimeJars);
+    this.testJars       = FileSet.of(testJars);
+    this.sourceJars     = FileSet.of(sourceJars);
+    this.docJars        = FileSet.of(docJars);
   }
 
   public String getName() { return name; }
@@ -41,13 +41,13 @@ final public class EnsimeProject {
       final Set<File> libraryDocs) {
     this.id             = id;
     this.dependsOn      = dependsOn;
-    this.sources        = sources;
-    this.targets        = targets;
+    this.sources        = FileSet.of(sources);
+    this.targets        = FileSet.of(targets);
     this.scalacOptions  = scalacOptions;
     this.javacOptions   = javacOptions;
-    this.libraryJars    = libraryJars;
-    this.librarySources = librarySources;
-    this.libraryDocs    = libraryDocs;
+    this.libraryJars    = FileSet.of(libraryJars);
+    this.librarySources = FileSet.of(librarySources);
+    this.libraryDocs    = FileSet.of(libraryDocs);
   }
 
   public EnsimeProjectId getId() { return id; }
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime.model;
+
+import java.io.File;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable set of files stored as sorted ids into a PathTable.
+ *
+ * The ids are split into segments, one per block of the table, and the
+ * table interns segments as well as whole sets. Identical sets are one
+ * instance, and sets that only overlap, e.g. modules that add a few jars to
+ * a common classpath, still share the segments they agree on. Paths are
+ * numbered in the order they are first seen, so the dependencies modules
+ * have in common tend to fill the same blocks.
+ */
+final public class FileSet extends AbstractSet<File> {
+
+  public static final FileSet EMPTY = new FileSet(new PathTable(), new Segment[0]);
+
+  private final PathTable table;
+  // sorted by block, none of them empty
+  private final Segment[] segments;
+  private final int size;
+  private final int hash;
+
+  private FileSet(final PathTable table, final Segment[] segments) {
+    this.table = table;
+    this.segments = segments;
+    int n = 0;
+    int h = 0;
+    for (Segment s : segments) {
+      n += s.ids.length;
+      for (int id : s.ids) {
+        h += table.file(id).hashCode();
+      }
+    }
+    this.size = n;
+    this.hash = h;
+  }
+
+  /**
+   * The files as a set, kept as is when they already are one. Other
+   * collections get a table of their own; a generation builds its sets with
+   * of(PathTable, Collection) instead, so they share paths.
+   */
+  public static FileSet of(final Collection<File> files) {
+    return files instanceof FileSet ? (FileSet) files : of(new PathTable(), files);
+  }
+
+  public static FileSet of(final PathTable table, final Collection<File> files) {
+    if (files instanceof FileSet && ((FileSet) files).table == table)
+      return (FileSet) files;
+    if (files.isEmpty())
+      return EMPTY;
+
+    int[] ids = new int[files.size()];
+    int n = 0;
+    for (File f : files) {
+      ids[n++] = table.intern(f);
+    }
+    Arrays.sort(ids);
+    int distinct = 0;
+    for (int i = 0; i < n; i++) {
+      if (distinct == 0 || ids[distinct - 1] != ids[i]) ids[distinct++] = ids[i];
+    }
+
+    List<Segment> segments = new ArrayList<>();
+    int from = 0;
+    for (int i = 1; i <= distinct; i++) {
+      if (i == distinct || Segment.block(ids[i]) != Segment.block(ids[from])) {
+        segments.add(table.intern(new Segment(Arrays.copyOfRange(ids, from, i))));
+        from = i;
+      }
+    }
+    return table.intern(new FileSet(table, segments.toArray(new Segment[0])));
+  }
+
+  /** The segments of this set, for tests. */
+  Segment[] segments() {
+    return segments.clone();
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean contains(final Object o) {
+    if (!(o instanceof File)) return false;
+    int id = table.indexOf((File) o);
+    if (id < 0) return false;
+    int block = Segment.block(id);
+    int lo = 0;
+    int hi = segments.length - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int b = segments[mid].block();
+      if (b < block) lo = mid + 1;
+      else if (b > block) hi = mid - 1;
+      else return Arrays.binarySearch(segments[mid].ids, id) >= 0;
+    }
+    return false;
+  }
+
+  @Override
+  public Iterator<File> iterator() {
+    return new Iterator<File>() {
+      private int segment = 0;
+      private int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return segment < segments.length;
+      }
+
+      @Override
+      public File next() {
+        if (segment >= segments.length) throw new NoSuchElementException();
+        int[] ids = segments[segment].ids;
+        File f = table.file(ids[next++]);
+        if (next == ids.length) {
+          segment++;
+          next = 0;
+        }
+        return f;
+      }
+    };
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (o == this) return true;
+    if (o instanceof FileSet && ((FileSet) o).table == table) {
+      FileSet other = (FileSet) o;
+      return hash == other.hash && Arrays.equals(segments, other.segments);
+    }
+    return super.equals(o);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime.model;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Numbers every distinct file the model refers to, so a path is stored once
+ * however many modules mention it, and file sets can be kept as sorted int
+ * arrays.
+ *
+ * A table belongs to one generation: it only grows while the generation
+ * runs, and is collected with the last file set that uses it.
+ */
+final public class PathTable {
+
+  private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+  // the sets and segments of this table that are still in use, by content
+  private final Map<FileSet, WeakReference<FileSet>> sets = new WeakHashMap<>();
+  private final Map<Segment, WeakReference<Segment>> segments = new WeakHashMap<>();
+  // rewritten after every insert, so readers of this field see the new entry
+  private volatile File[] files = new File[1024];
+  private int size = 0;
+
+  /**
+   * The id of the file, adding it to the table when it is new.
+   */
+  public int intern(final File f) {
+    Integer id = ids.get(f.getPath());
+    return id != null ? id : add(f);
+  }
+
+  private synchronized int add(final File f) {
+    Integer id = ids.get(f.getPath());
+    if (id != null) return id;
+    File[] current = files;
+    if (size == current.length) {
+      current = Arrays.copyOf(current, size * 2);
+    }
+    current[size] = f;
+    files = current;
+    ids.put(f.getPath(), size);
+    return size++;
+  }
+
+  /**
+   * The id of the file, or -1 when the table has never seen it.
+   */
+  public int indexOf(final File f) {
+    Integer id = ids.get(f.getPath());
+    return id == null ? -1 : id;
+  }
+
+  public File file(final int id) {
+    return files[id];
+  }
+
+  public int size() {
+    return ids.size();
+  }
+
+  /**
+   * The set of this table with the same content as the candidate, which
+   * becomes that set when there is none yet.
+   */
+  FileSet intern(final FileSet candidate) {
+    return intern(sets, candidate);
+  }
+
+  /**
+   * The segment of this table with the same ids as the candidate, which
+   * becomes that segment when there is none yet.
+   */
+  Segment intern(final Segment candidate) {
+    return intern(segments, candidate);
+  }
+
+  private static <T> T intern(final Map<T, WeakReference<T>> interned,
+      final T candidate) {
+    synchronized (interned) {
+      WeakReference<T> ref = interned.get(candidate);
+      T existing = ref == null ? null : ref.get();
+      if (existing != null) return existing;
+      interned.put(candidate, new WeakReference<>(candidate));
+      return candidate;
+    }
+  }
+}
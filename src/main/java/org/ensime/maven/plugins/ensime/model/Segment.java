@@ -0,0 +1,57 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime.model;
+
+import java.util.Arrays;
+
+/**
+ * The ids of a file set that fall into one block of its PathTable, sorted.
+ * Segments are interned per table, so sets that agree on a block share it.
+ */
+final class Segment {
+
+  // ids are grouped into blocks of 64
+  static final int SHIFT = 6;
+
+  final int[] ids;
+  private final int hash;
+
+  Segment(final int[] ids) {
+    this.ids = ids;
+    this.hash = Arrays.hashCode(ids);
+  }
+
+  static int block(final int id) {
+    return id >>> SHIFT;
+  }
+
+  int block() {
+    return block(ids[0]);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (o == this) return true;
+    if (!(o instanceof Segment)) return false;
+    Segment other = (Segment) o;
+    return hash == other.hash && Arrays.equals(ids, other.ids);
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+
+/**
+ * Common fields of the plugin's flight recorder events.
+ */
+@Category({"ENSIME", "Maven"})
+abstract class EnsimeEvent extends jdk.jfr.Event {
+
+  @Label("Coordinates")
+  String coordinates;
+
+  @Label("Module")
+  String module;
+
+  @Label("Size")
+  @DataAmount
+  long bytes;
+
+  @Label("Outcome")
+  String outcome;
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012 Happy-Camper Street.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.ensime.maven.plugins.ensime.jfr;
+
+/**
+ * Records spans as the plugin's flight recorder events. Loaded by Flight
+ * only when jdk.jfr is available.
+ */
+final class JfrRecorder implements Recorder {
+
+  @Override
+  public Span begin(final String type, final String coordinates,
+      final String module) {
+    EnsimeEvent event;
+    switch (type) {
+      case Flight.RESOLVE: event = new ResolveEvent(); break;
+      case Flight.RESOLVE_ALL: event = new ResolveAllEvent(); break;
+      case Flight.SCALA_VERSION: event = new ScalaVersionEvent(); break;
+      case Flight.JAVA_HOME: event = new JavaHomeEvent(); break;
+      case Flight.FORMAT: event = new FormatEvent(); break;
+      case Flight.INDEX_LAUNCH: event = new IndexLaunchEvent(); break;
+      default: throw new IllegalArgumentException(type);
+    }
+    if (!event.isEnabled()) return Span.NOOP;
+    event.coordinates = coordinates;
+    event.module = module;
+    event.begin();
+    return new Recorded(event);
+  }
+
+  private static final class Recorded implements Span {
+    private final EnsimeEvent event;
+
+    private Recorded(final EnsimeEvent event) {
+      this.event = event;
+    }
+
+    @Override
+    public void end(final String outcome, final long bytes) {
+      event.end();
+      if (event.shouldCommit()) {
+        event.outcome = outcome;
+        event.bytes = bytes;
+        event.commit();
+      }
+    }
+  }
+}
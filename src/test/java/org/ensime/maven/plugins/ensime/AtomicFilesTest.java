@@ -0,0 +1,36 @@
+package org.ensime.maven.plugins.ensime;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+
+public class AtomicFilesTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testFailedWriteKeepsTheFile() throws Exception {
+        File target = new File(tmp.getRoot(), ".ensime");
+        Files.write(target.toPath(), "(good)".getBytes("UTF-8"));
+        try {
+            AtomicFiles.write(target.toPath(), staging -> {
+                Files.write(staging, "(trunc".getBytes("UTF-8"));
+                throw new IOException("No space left on device");
+            });
+            fail("the write error was swallowed");
+        } catch (IOException e) {
+            assertEquals("No space left on device", e.getMessage());
+        }
+        assertArrayEquals("(good)".getBytes("UTF-8"), Files.readAllBytes(target.toPath()));
+        assertEquals(1, tmp.getRoot().list().length);
+    }
+}
@@ -0,0 +1,99 @@
+package org.ensime.maven.plugins.ensime;
+
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import org.ensime.maven.plugins.ensime.model.EnsimeConfig;
+import org.ensime.maven.plugins.ensime.model.EnsimeProject;
+import org.ensime.maven.plugins.ensime.model.EnsimeProjectId;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class ConfigDiffTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static EnsimeConfig config(List<String> scalacOptions, String jar) {
+        EnsimeProject project = new EnsimeProject(new EnsimeProjectId("core", "compile"),
+            Collections.emptyList(), Collections.singleton(new File("/src/core")),
+            Collections.singleton(new File("/target/core")), scalacOptions,
+            Collections.emptyList(), Collections.singleton(new File(jar)),
+            Collections.emptySet(), Collections.emptySet());
+        return new EnsimeConfig(new File("/root"), new File("/root/.ensime_cache"),
+            Collections.emptySet(), Collections.emptySet(), "2.0.0", "root", "2.11.8",
+            Collections.emptyList(), Collections.emptyMap(), new File("/jdk"),
+            Collections.emptyList(), Collections.emptyList(), Collections.emptySet(),
+            Collections.singletonList(project));
+    }
+
+    private ConfigDiff.Report generate(EnsimeConfig config, String content) throws Exception {
+        File cacheDir = new File(tmp.getRoot(), ".ensime_cache");
+        File dotEnsime = new File(tmp.getRoot(), ".ensime");
+        Optional<ConfigDiff.Snapshot> previous = ConfigDiff.previous(cacheDir, dotEnsime);
+        Files.write(dotEnsime.toPath(), content.getBytes("UTF-8"));
+        ConfigDiff.Snapshot snapshot = ConfigDiff.of(config, dotEnsime);
+        ConfigDiff.Report report = ConfigDiff.diff(previous, snapshot);
+        ConfigDiff.write(cacheDir, snapshot, report);
+        assertEquals(Optional.of(report.getChange()), ConfigDiff.lastChange(cacheDir));
+        return report;
+    }
+
+    @Test
+    public void testClassification() throws Exception {
+        List<String> options = Arrays.asList("-feature");
+        assertEquals(ConfigDiff.Change.CLASSPATH_CHANGED,
+                     generate(config(options, "/a-1.jar"), "(1)").getChange());
+        assertEquals(ConfigDiff.Change.NONE,
+                     generate(config(options, "/a-1.jar"), "(1)").getChange());
+        assertEquals(ConfigDiff.Change.COSMETIC,
+                     generate(config(options, "/a-1.jar"), "( 1 )").getChange());
+
+        ConfigDiff.Report optionsOnly =
+            generate(config(Arrays.asList("-feature", "-Xlint"), "/a-1.jar"), "(2)");
+        assertEquals(ConfigDiff.Change.OPTIONS_ONLY, optionsOnly.getChange());
+        assertEquals(Arrays.asList("-Xlint"),
+                     optionsOnly.getChanges().get("core").get("options").get("added"));
+
+        ConfigDiff.Report classpath =
+            generate(config(Arrays.asList("-feature", "-Xlint"), "/a-2.jar"), "(3)");
+        assertEquals(ConfigDiff.Change.CLASSPATH_CHANGED, classpath.getChange());
+        assertEquals(Arrays.asList("/a-2.jar"), classpath.getChanges().get("core").get("jars").get("added"));
+        assertEquals(Arrays.asList("/a-1.jar"), classpath.getChanges().get("core").get("jars").get("removed"));
+    }
+
+    @Test
+    public void testIndexCurrentAfterNoClasspathChange() throws Exception {
+        File cacheDir = new File(tmp.getRoot(), ".ensime_cache");
+        File dotEnsime = new File(tmp.getRoot(), ".ensime");
+        List<String> options = Arrays.asList("-feature");
+        generate(config(options, "/a-1.jar"), "(1)");
+        assertFalse(ConfigDiff.isIndexCurrent(cacheDir, dotEnsime, Long.MAX_VALUE));
+
+        generate(config(Arrays.asList("-Xlint"), "/a-1.jar"), "(2)");
+        assertTrue(ConfigDiff.isIndexCurrent(cacheDir, dotEnsime, Long.MAX_VALUE));
+        // indexed before the classpath last changed
+        assertFalse(ConfigDiff.isIndexCurrent(cacheDir, dotEnsime, 0));
+
+        Files.write(dotEnsime.toPath(), "(edited)".getBytes("UTF-8"));
+        assertFalse(ConfigDiff.isIndexCurrent(cacheDir, dotEnsime, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testEditedConfigHasNoBaseline() throws Exception {
+        generate(config(Collections.emptyList(), "/a-1.jar"), "(1)");
+        Files.write(new File(tmp.getRoot(), ".ensime").toPath(), "(edited)".getBytes("UTF-8"));
+
+        assertFalse(ConfigDiff.previous(new File(tmp.getRoot(), ".ensime_cache"),
+                                         new File(tmp.getRoot(), ".ensime")).isPresent());
+    }
+}
@@ -0,0 +1,45 @@
+package org.ensime.maven.plugins.ensime;
+
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Optional;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class EnsimeServerTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testIndexedAtNeedsAnIndex() throws Exception {
+        File cacheDir = tmp.newFolder(".ensime_cache");
+        Files.write(new File(cacheDir, EnsimeServer.INDEXED_FILE).toPath(), "42".getBytes("UTF-8"));
+        assertEquals(Optional.empty(), EnsimeServer.indexedAt(cacheDir));
+
+        new File(cacheDir, "index-2.0").mkdir();
+        assertEquals(Optional.of(42L), EnsimeServer.indexedAt(cacheDir));
+    }
+
+    @Test
+    public void testUnrelatedProcessIsNotAServer() throws Exception {
+        Process sleep = new ProcessBuilder("sleep", "30").start();
+        try {
+            long pid = EnsimeServer.pid(sleep).get();
+            assertTrue(EnsimeServer.commandLine(pid).get().contains("sleep"));
+            assertFalse(EnsimeServer.isServer(pid));
+            // stopping a pid that is not a server leaves it alone
+            assertTrue(EnsimeServer.stop(pid, 0));
+            assertTrue(sleep.isAlive());
+        } finally {
+            sleep.destroyForcibly().waitFor();
+        }
+        assertFalse(EnsimeServer.isServer(EnsimeServer.pid(sleep).get()));
+    }
+}
@@ -0,0 +1,72 @@
+package org.ensime.maven.plugins.ensime;
+
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class FingerprintsTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File file(String name, String content) throws Exception {
+        File file = new File(tmp.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+        return file;
+    }
+
+    @Test
+    public void testFingerprintFollowsContent() throws Exception {
+        File a = file("a.jar", "abc");
+        File b = file("b.jar", "abc");
+        File c = file("c.jar", "abd");
+        assertEquals(Fingerprints.fingerprint(a), Fingerprints.fingerprint(b));
+        assertNotEquals(Fingerprints.fingerprint(a), Fingerprints.fingerprint(c));
+        assertEquals(16, Fingerprints.fingerprint(file("empty.jar", "")).length());
+    }
+
+    @Test
+    public void testReport() throws Exception {
+        File store = new File(tmp.getRoot(), Fingerprints.FILE_NAME);
+        File kept = file("kept.jar", "kept");
+        File touched = file("touched.jar", "touched");
+        File changed = file("changed.jar", "before");
+        File removed = file("removed.jar", "removed");
+
+        Fingerprints first = new Fingerprints(store);
+        Fingerprints.Report initial = first.update(Arrays.asList(kept, touched, changed, removed), 2);
+        assertEquals(4, initial.getAdded().size());
+        first.save();
+
+        touched.setLastModified(touched.lastModified() + 2000);
+        Files.write(changed.toPath(), "after!".getBytes("UTF-8"));
+        File added = file("added.jar", "added");
+
+        Fingerprints.Report report = new Fingerprints(store)
+            .update(Arrays.asList(kept, touched, changed, added), 2);
+        assertEquals(Collections.singleton(added.getAbsolutePath()), report.getAdded());
+        assertEquals(Collections.singleton(removed.getAbsolutePath()), report.getRemoved());
+        assertEquals(Collections.singleton(changed.getAbsolutePath()), report.getChanged());
+        assertEquals("Classpath: 1 added, 1 removed, 1 changed", report.summary());
+    }
+
+    @Test
+    public void testUnchangedRunIsEmpty() throws Exception {
+        File store = new File(tmp.getRoot(), Fingerprints.FILE_NAME);
+        File jar = file("a.jar", "a");
+        Fingerprints first = new Fingerprints(store);
+        first.update(Collections.singleton(jar), 1);
+        first.save();
+
+        assertTrue(new Fingerprints(store).update(Collections.singleton(jar), 1).isEmpty());
+    }
+}
@@ -0,0 +1,39 @@
+package org.ensime.maven.plugins.ensime;
+
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class GenerationMetricsTest {
+
+    @Test
+    public void testPhasesAccumulate() {
+        GenerationMetrics metrics = new GenerationMetrics();
+        assertEquals("2.11.8", metrics.time("scala-version", () -> "2.11.8"));
+        metrics.time("scala-version", () -> "2.11.8");
+
+        assertTrue(metrics.toJson().contains("\"scala-version\": {\"calls\": 2"));
+    }
+
+    @Test
+    public void testResolutionHistogram() {
+        GenerationMetrics metrics = new GenerationMetrics();
+        metrics.resolution("resolve", "central", true, 3000000L);
+        metrics.resolution("resolve", "central", true, 70000000L);
+        metrics.resolution("resolveAll:sources", "none", false, 1000L);
+
+        String text = metrics.toOpenMetrics();
+        assertTrue(text.contains(
+            "ensime_resolution_seconds_bucket{operation=\"resolve\",repository=\"central\","
+            + "outcome=\"hit\",le=\"0.005\"} 1\n"));
+        assertTrue(text.contains(
+            "ensime_resolution_seconds_bucket{operation=\"resolve\",repository=\"central\","
+            + "outcome=\"hit\",le=\"+Inf\"} 2\n"));
+        assertTrue(text.contains(
+            "ensime_resolution_seconds_count{operation=\"resolveAll:sources\","
+            + "repository=\"none\",outcome=\"miss\"} 1\n"));
+        assertTrue(text.endsWith("# EOF\n"));
+    }
+}
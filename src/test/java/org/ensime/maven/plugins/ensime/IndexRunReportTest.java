@@ -0,0 +1,58 @@
+package org.ensime.maven.plugins.ensime;
+
+
+import java.util.Optional;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class IndexRunReportTest {
+
+    @Test
+    public void testPhasesFollowServerOutput() {
+        IndexRunReport report = new IndexRunReport(3);
+        assertEquals("startup", report.currentPhase());
+
+        report.line("INFO  o.e.s.Server - starting");
+        assertEquals("startup", report.currentPhase());
+
+        Optional<String> progress = report.line("INFO  SearchService - Indexing 3 jars");
+        assertEquals("indexing", report.currentPhase());
+        assertTrue(progress.isPresent());
+
+        assertEquals(Optional.of("[indexing] indexed 2/3"), report.line("indexed 2 / 3"));
+        assertEquals(2, report.getIndexed());
+
+        report.line("shutting down");
+        report.finished(0);
+
+        assertEquals("success", report.getExitStatus());
+        assertEquals(3, report.getPhaseMillis().size());
+        assertTrue(report.toJson().contains("\"jarCount\": 3"));
+        assertTrue(report.toJson().contains("\"exitCode\": 0"));
+    }
+
+    @Test
+    public void testTimeout() {
+        IndexRunReport report = new IndexRunReport(0);
+        report.timedOut();
+
+        assertEquals("timeout", report.getExitStatus());
+        assertTrue(report.toJson().contains("\"exitCode\": null"));
+    }
+
+    @Test
+    public void testFailureKeepsOutputTail() {
+        IndexRunReport report = new IndexRunReport(0);
+        for (int i = 0; i < 60; i++) report.line("line " + i);
+        report.finished(1);
+
+        assertFalse(report.isSuccess());
+        assertEquals(Optional.of(1), report.getExitCode());
+        assertEquals(50, report.getTail().size());
+        assertEquals("line 10", report.getTail().get(0));
+        assertEquals("line 59", report.getTail().get(49));
+    }
+}
@@ -0,0 +1,65 @@
+package org.ensime.maven.plugins.ensime;
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+
+
+public class PackageIndexTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File jar(String name, String... entries) throws Exception {
+        File jar = tmp.newFile(name);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            out.setComment("a trailing comment");
+            for (String entry : entries) {
+                out.putNextEntry(new ZipEntry(entry));
+                out.write(new byte[]{(byte) 0xca, (byte) 0xfe});
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    @Test
+    public void testPackagesOfClasses() throws Exception {
+        File jar = jar("a.jar", "META-INF/MANIFEST.MF", "META-INF/versions/9/x/Y.class",
+                       "module-info.class", "Default.class", "com/example/A.class",
+                       "com/example/A$1.class", "com/example/impl/B.class", "com/example/res.txt");
+
+        assertEquals(new HashSet<>(Arrays.asList("com.example", "com.example.impl")),
+                     PackageIndex.readPackages(jar));
+    }
+
+    @Test
+    public void testUnchangedJarsComeFromCache() throws Exception {
+        File cache = new File(tmp.getRoot(), PackageIndex.CACHE_NAME);
+        File jar = jar("a.jar", "com/example/A.class");
+        PackageIndex first = new PackageIndex(cache);
+        first.packages(Arrays.asList(jar), 2);
+        long mtime = jar.lastModified();
+        first.save();
+
+        // same size and mtime, different content: still served from the cache
+        byte[] garbage = new byte[(int) jar.length()];
+        Files.write(jar.toPath(), garbage);
+        jar.setLastModified(mtime);
+        Set<String> packages = new PackageIndex(cache).packages(jar);
+        assertEquals(new HashSet<>(Arrays.asList("com.example")), packages);
+
+        jar.setLastModified(mtime + 2000);
+        assertEquals(new HashSet<>(), new PackageIndex(cache).packages(jar));
+    }
+}
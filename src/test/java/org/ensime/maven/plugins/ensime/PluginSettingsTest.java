@@ -0,0 +1,61 @@
+package org.ensime.maven.plugins.ensime;
+
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginManagement;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3DomBuilder;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+
+public class PluginSettingsTest {
+
+    private static Plugin plugin(String groupId, String artifactId, String config)
+        throws Exception {
+        Plugin plugin = new Plugin();
+        plugin.setGroupId(groupId);
+        plugin.setArtifactId(artifactId);
+        plugin.setConfiguration(Xpp3DomBuilder.build(new StringReader(config)));
+        return plugin;
+    }
+
+    @Test
+    public void testDeclaredPluginWinsOverManagement() throws Exception {
+        Build build = new Build();
+        build.addPlugin(plugin("net.alchim31.maven", "scala-maven-plugin",
+            "<configuration><args><arg>-Xfatal-warnings</arg></args>"
+            + "<jvmArgs><jvmArg>-Xss4m</jvmArg></jvmArgs>"
+            + "<scalaOrganization>org.typelevel</scalaOrganization></configuration>"));
+        PluginManagement management = new PluginManagement();
+        management.addPlugin(plugin("net.alchim31.maven", "scala-maven-plugin",
+            "<configuration><args><arg>-deprecation</arg></args></configuration>"));
+        management.addPlugin(plugin("org.apache.maven.plugins", "maven-compiler-plugin",
+            "<configuration><compilerArgs><arg>-Xlint</arg></compilerArgs></configuration>"));
+        build.setPluginManagement(management);
+        Model model = new Model();
+        model.setBuild(build);
+
+        PluginSettings settings = PluginSettings.of(new MavenProject(model));
+
+        assertEquals(Arrays.asList("-Xfatal-warnings"), settings.getScalacArgs());
+        assertEquals(Arrays.asList("-Xss4m"), settings.getJvmArgs());
+        assertEquals(Optional.of("org.typelevel"), settings.getScalaOrganization());
+        assertEquals(Arrays.asList("-Xlint"), settings.getCompilerArgs());
+        assertEquals(Collections.emptyList(), settings.getSources());
+    }
+
+    @Test
+    public void testNoPlugins() {
+        PluginSettings settings = PluginSettings.of(new MavenProject(new Model()));
+
+        assertEquals(Collections.emptyList(), settings.getScalacArgs());
+        assertEquals(Optional.empty(), settings.getScalaOrganization());
+    }
+}
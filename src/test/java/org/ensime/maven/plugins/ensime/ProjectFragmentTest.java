@@ -0,0 +1,81 @@
+package org.ensime.maven.plugins.ensime;
+
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.ensime.maven.plugins.ensime.model.EnsimeProject;
+import org.ensime.maven.plugins.ensime.model.EnsimeProjectId;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+
+public class ProjectFragmentTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static Set<File> files(String... paths) {
+        Set<File> files = new HashSet<>();
+        Arrays.stream(paths).forEach(p -> files.add(new File(p)));
+        return files;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        EnsimeProject project = new EnsimeProject(
+            new EnsimeProjectId("core", "compile"),
+            Arrays.asList(new EnsimeProjectId("util", "compile")),
+            files("/src/core/main/scala"), files("/src/core/target/classes"),
+            Arrays.asList("-feature", "-Xplugin:/p/with spaces.jar"),
+            Collections.emptyList(),
+            files("/m2/a.jar", "/m2/b.jar"), files("/m2/a-sources.jar"),
+            files());
+        File out = new File(tmp.getRoot(), "target/" + ProjectFragment.FILE_NAME);
+
+        new ProjectFragment(project, "2.11.8", Optional.of("abc")).write(out);
+        ProjectFragment read = ProjectFragment.read(out);
+        EnsimeProject copy = read.getProject();
+
+        assertEquals("2.11.8", read.getScalaVersion());
+        assertEquals(Optional.of("abc"), read.getInputs());
+        assertEquals(project.getId().toString(), copy.getId().toString());
+        assertEquals(project.getDependsOn().get(0).toString(),
+            copy.getDependsOn().get(0).toString());
+        assertEquals(project.getSources(), copy.getSources());
+        assertEquals(project.getTargets(), copy.getTargets());
+        assertEquals(project.getScalacOptions(), copy.getScalacOptions());
+        assertEquals(project.getJavacOptions(), copy.getJavacOptions());
+        assertEquals(project.getLibraryJars(), copy.getLibraryJars());
+        assertEquals(project.getLibrarySources(), copy.getLibrarySources());
+        assertEquals(project.getLibraryDocs(), copy.getLibraryDocs());
+    }
+
+    private static MavenProject module(String version) {
+        Dependency dependency = new Dependency();
+        dependency.setGroupId("org.example");
+        dependency.setArtifactId("lib");
+        // as a parent's dependencyManagement or an imported BOM would set it
+        dependency.setVersion(version);
+        Model model = new Model();
+        model.addDependency(dependency);
+        return new MavenProject(model);
+    }
+
+    @Test
+    public void testInputsFollowEffectiveDependencies() {
+        assertEquals(ProjectFragment.inputs(module("1.0")),
+            ProjectFragment.inputs(module("1.0")));
+        assertNotEquals(ProjectFragment.inputs(module("1.0")),
+            ProjectFragment.inputs(module("1.1")));
+    }
+}
@@ -0,0 +1,109 @@
+package org.ensime.maven.plugins.ensime;
+
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.eclipse.aether.RepositorySystem;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class RepositoryHealthTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private EnsimeConfigGenerator generator(StubHttpRepository repository,
+        int timeout, int maxFailures) throws Exception {
+        return generator(Collections.singletonList(repository), timeout, maxFailures);
+    }
+
+    private EnsimeConfigGenerator generator(List<StubHttpRepository> repositories,
+        int timeout, int maxFailures) throws Exception {
+        RepositorySystem system = StubHttpRepository.system();
+        EnsimeConfigGenerator generator = new EnsimeConfigGenerator(
+            StubHttpRepository.project(tmp.getRoot(), repositories,
+                "a:a:1", "b:b:1", "c:c:1", "d:d:1"),
+            system, StubHttpRepository.session(system, tmp.newFolder("m2")),
+            new Properties(), "2.0.0", "2.11.8", new SystemStreamLog());
+        generator.setServerClasspathCache(new ServerClasspathCache(tmp.newFolder("cache")));
+        generator.setReadTimeout(timeout);
+        generator.setMaxRepositoryFailures(maxFailures);
+        return generator;
+    }
+
+    @Test
+    public void testFailingRepositoryIsSkipped() throws Exception {
+        try (StubHttpRepository repository = new StubHttpRepository(
+                exchange -> StubHttpRepository.respond(exchange, 503, new byte[0]))) {
+            EnsimeConfigGenerator generator = generator(repository, 0, 2);
+
+            generator.prefetch(1);
+
+            assertEquals(2, repository.requests.get());
+            List<String> summary = generator.getRepositoryHealth().summary();
+            assertEquals(1, summary.size());
+            assertTrue(summary.get(0), summary.get(0).startsWith("Repository stub was skipped for 15 lookups"));
+        }
+    }
+
+    @Test
+    public void testFailuresBeforeAnotherRepositoryServesCount() throws Exception {
+        try (StubHttpRepository dead = new StubHttpRepository(
+                exchange -> StubHttpRepository.respond(exchange, 503, new byte[0]));
+             StubHttpRepository healthy = new StubHttpRepository(exchange -> {
+                 boolean jar = exchange.getRequestURI().getPath().endsWith(".jar");
+                 StubHttpRepository.respond(exchange, jar ? 200 : 404,
+                     jar ? "jar".getBytes("UTF-8") : new byte[0]);
+             })) {
+            EnsimeConfigGenerator generator = generator(Arrays.asList(dead, healthy), 0, 2);
+
+            Set<File> files = generator.prefetch(1);
+
+            assertFalse(files.isEmpty());
+            List<String> summary = generator.getRepositoryHealth().summary();
+            assertEquals(1, summary.size());
+            assertTrue(summary.get(0), summary.get(0).startsWith("Repository stub was skipped"));
+        }
+    }
+
+    @Test
+    public void testMissingArtifactsAreNotFailures() throws Exception {
+        try (StubHttpRepository repository = new StubHttpRepository(
+                exchange -> StubHttpRepository.respond(exchange, 404, new byte[0]))) {
+            EnsimeConfigGenerator generator = generator(repository, 0, 2);
+
+            generator.prefetch(1);
+
+            assertEquals(17, repository.requests.get());
+            assertTrue(generator.getRepositoryHealth().summary().isEmpty());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testHangingRepositoryTimesOut() throws Exception {
+        try (StubHttpRepository repository = new StubHttpRepository(exchange -> {
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            })) {
+            EnsimeConfigGenerator generator = generator(repository, 200, 1);
+
+            generator.prefetch(1);
+
+            assertEquals(1, repository.requests.get());
+            assertEquals(1, generator.getRepositoryHealth().summary().size());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.ensime.maven.plugins.ensime;
+
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import org.apache.maven.model.Repository;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class RepositoryRoutesTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static RemoteRepository repository(String id) {
+        return new RemoteRepository.Builder(id, "default", "http://" + id + "/").build();
+    }
+
+    @Test
+    public void testRoutedRepositoryComesFirst() {
+        RepositoryRoutes routes = RepositoryRoutes.inMemory();
+        routes.served("com.example", "internal");
+        List<RemoteRepository> repositories =
+            Arrays.asList(repository("central"), repository("internal"), repository("other"));
+
+        assertEquals(Optional.of("internal"), routes.route("com.example.foo.bar"));
+        assertEquals(Arrays.asList(repository("internal"), repository("central"), repository("other")),
+                     routes.order("com.example.foo", repositories));
+        assertEquals(repositories, routes.order("com.other", repositories));
+        assertFalse(routes.route("com").isPresent());
+    }
+
+    @Test
+    public void testRoutesArePersisted() throws Exception {
+        File file = new File(tmp.getRoot(), "routes.properties");
+        RepositoryRoutes routes = RepositoryRoutes.load(file);
+        routes.served("com.example", "internal");
+        routes.save();
+
+        RepositoryRoutes concurrent = RepositoryRoutes.load(file);
+        concurrent.served("org.other", "central");
+        concurrent.save();
+
+        RepositoryRoutes reloaded = RepositoryRoutes.load(file);
+        assertEquals(Optional.of("internal"), reloaded.route("com.example"));
+        assertEquals(Optional.of("central"), reloaded.route("org.other"));
+    }
+
+    private int generate(StubHttpRepository central, StubHttpRepository internal,
+        File routesFile) throws Exception {
+        RepositorySystem system = StubHttpRepository.system();
+        MavenProject project = central.project(tmp.getRoot(), "com.example:a:1");
+        Repository second = new Repository();
+        second.setId("internal");
+        second.setUrl(internal.url());
+        project.getModel().addRepository(second);
+        EnsimeConfigGenerator generator = new EnsimeConfigGenerator(project,
+            system, StubHttpRepository.session(system, tmp.newFolder()),
+            new Properties(), "2.0.0", "2.11.8", new SystemStreamLog());
+        generator.setServerClasspathCache(new ServerClasspathCache(tmp.newFolder()));
+        RepositoryRoutes routes = RepositoryRoutes.load(routesFile);
+        generator.setRepositoryRoutes(routes);
+        int before = central.requests.get();
+        generator.prefetch(1);
+        routes.save();
+        return (int) central.paths.subList(before, central.paths.size()).stream()
+            .filter(p -> p.equals("/com/example/a/1/a-1.jar")).count();
+    }
+
+    @Test
+    public void testRoutedLookupSkipsMisses() throws Exception {
+        try (StubHttpRepository central = new StubHttpRepository(
+                exchange -> StubHttpRepository.respond(exchange, 404, new byte[0]));
+             StubHttpRepository internal = new StubHttpRepository(exchange -> {
+                 boolean jar = exchange.getRequestURI().getPath().equals("/com/example/a/1/a-1.jar");
+                 StubHttpRepository.respond(exchange, jar ? 200 : 404, jar ? new byte[]{1} : new byte[0]);
+             })) {
+            File routesFile = new File(tmp.getRoot(), "routes.properties");
+
+            assertEquals(1, generate(central, internal, routesFile));
+            assertTrue(routesFile.isFile());
+            assertEquals(0, generate(central, internal, routesFile));
+        }
+    }
+}
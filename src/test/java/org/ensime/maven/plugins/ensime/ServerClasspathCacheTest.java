@@ -0,0 +1,44 @@
+package org.ensime.maven.plugins.ensime;
+
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+
+public class ServerClasspathCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testReusesClasspathWhileJarsExist() throws Exception {
+        File server = tmp.newFile("server_2.11-2.0.0.jar");
+        File core = tmp.newFile("core_2.11-2.0.0.jar");
+        Set<File> jars = new HashSet<>(Arrays.asList(server, core));
+        ServerClasspathCache cache = new ServerClasspathCache(tmp.newFolder("cache"));
+
+        cache.put("org.scala-lang", "2.11", "2.0.0", jars);
+        assertEquals(Optional.of(jars), cache.get("org.scala-lang", "2.11", "2.0.0"));
+        assertFalse(cache.get("org.typelevel", "2.11", "2.0.0").isPresent());
+
+        core.delete();
+        assertFalse(cache.get("org.scala-lang", "2.11", "2.0.0").isPresent());
+    }
+
+    @Test
+    public void testSnapshotsAreNotCached() throws Exception {
+        Set<File> jars = new HashSet<>(Arrays.asList(tmp.newFile("server.jar")));
+        ServerClasspathCache cache = new ServerClasspathCache(tmp.newFolder("cache"));
+
+        cache.put("org.scala-lang", "2.11", "2.0.0-SNAPSHOT", jars);
+        assertFalse(cache.get("org.scala-lang", "2.11", "2.0.0-SNAPSHOT").isPresent());
+    }
+}
@@ -0,0 +1,48 @@
+package org.ensime.maven.plugins.ensime;
+
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class SharedIndexCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static void touch(final File file) throws Exception {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), "x".getBytes("UTF-8"));
+    }
+
+    @Test
+    public void testSharesOnlyTheIndex() throws Exception {
+        SharedIndexCache shared = new SharedIndexCache(tmp.newFolder("shared"));
+        String key = SharedIndexCache.key(Collections.emptyList(), "2.0.0");
+
+        File built = tmp.newFolder("built", ".ensime_cache");
+        touch(new File(built, "index/segments_1"));
+        touch(new File(built, "sql-1.0/db.h2.db"));
+        touch(new File(built, "port"));
+        touch(new File(built, Fingerprints.FILE_NAME));
+        assertTrue(shared.publish(key, built));
+        assertFalse(new File(shared.entry(key), "port").exists());
+        assertFalse(new File(shared.entry(key), Fingerprints.FILE_NAME).exists());
+
+        // generate already wrote its own files, but there is no index yet
+        File fresh = tmp.newFolder("fresh", ".ensime_cache");
+        touch(new File(fresh, ConfigDiff.SNAPSHOT_NAME));
+        assertTrue(shared.seed(key, fresh));
+        assertTrue(new File(fresh, "index/segments_1").isFile());
+        assertTrue(new File(fresh, "sql-1.0/db.h2.db").isFile());
+        assertFalse(new File(fresh, "port").exists());
+
+        assertFalse(shared.seed(key, fresh));
+    }
+}
@@ -0,0 +1,151 @@
+package org.ensime.maven.plugins.ensime;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Repository;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
+import org.eclipse.aether.impl.ArtifactDescriptorReader;
+import org.eclipse.aether.impl.DefaultServiceLocator;
+import org.eclipse.aether.impl.VersionRangeResolver;
+import org.eclipse.aether.impl.VersionResolver;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.resolution.ArtifactDescriptorResult;
+import org.eclipse.aether.resolution.VersionRangeResolutionException;
+import org.eclipse.aether.resolution.VersionRangeResult;
+import org.eclipse.aether.resolution.VersionResult;
+import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
+import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+import org.eclipse.aether.transport.http.HttpTransporterFactory;
+import org.eclipse.aether.util.version.GenericVersionScheme;
+import org.eclipse.aether.version.InvalidVersionSpecificationException;
+
+
+/**
+ * A remote repository served over HTTP from the test, with a real Aether
+ * resolver in front of it. Poms are not read: every artifact has no
+ * dependencies.
+ */
+public class StubHttpRepository implements AutoCloseable {
+
+    public final AtomicInteger requests = new AtomicInteger();
+    public final List<String> paths = Collections.synchronizedList(new ArrayList<>());
+    private final HttpServer server;
+
+    public StubHttpRepository(HttpHandler handler) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "stub-repository");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            paths.add(exchange.getRequestURI().getPath());
+            handler.handle(exchange);
+        });
+        server.start();
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    public static void respond(HttpExchange exchange, int status, byte[] body)
+        throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    /**
+     * A jar module depending on the given artifacts, resolved from this
+     * repository only.
+     */
+    public MavenProject project(File basedir, String... coordinates) {
+        return project(basedir, Collections.singletonList(this), coordinates);
+    }
+
+    /**
+     * A jar module depending on the given artifacts, resolved from the
+     * repositories in order, with ids stub, stub2, ...
+     */
+    public static MavenProject project(File basedir, List<StubHttpRepository> repositories,
+        String... coordinates) {
+        Model model = new Model();
+        model.setGroupId("stub");
+        model.setArtifactId("stub-module");
+        model.setVersion("1");
+        model.setPackaging("jar");
+        model.setBuild(new Build());
+        for (String coordinate : coordinates) {
+            String[] gav = coordinate.split(":");
+            Dependency dependency = new Dependency();
+            dependency.setGroupId(gav[0]);
+            dependency.setArtifactId(gav[1]);
+            dependency.setVersion(gav[2]);
+            model.addDependency(dependency);
+        }
+        for (int i = 0; i < repositories.size(); i++) {
+            Repository repository = new Repository();
+            repository.setId(i == 0 ? "stub" : "stub" + (i + 1));
+            repository.setUrl(repositories.get(i).url());
+            model.addRepository(repository);
+        }
+        MavenProject project = new MavenProject(model);
+        project.setFile(new File(basedir, "pom.xml"));
+        project.setCollectedProjects(new ArrayList<>());
+        return project;
+    }
+
+    public static RepositorySystem system() {
+        GenericVersionScheme scheme = new GenericVersionScheme();
+        DefaultServiceLocator locator = new DefaultServiceLocator();
+        locator.addService(RepositoryConnectorFactory.class, BasicRepositoryConnectorFactory.class);
+        locator.addService(TransporterFactory.class, HttpTransporterFactory.class);
+        locator.setServices(ArtifactDescriptorReader.class,
+            (session, request) -> new ArtifactDescriptorResult(request));
+        locator.setServices(VersionResolver.class,
+            (session, request) -> new VersionResult(request)
+                .setVersion(request.getArtifact().getVersion()));
+        locator.setServices(VersionRangeResolver.class, (session, request) -> {
+            try {
+                String version = request.getArtifact().getVersion();
+                VersionRangeResult result = new VersionRangeResult(request);
+                result.setVersionConstraint(scheme.parseVersionConstraint(version));
+                result.addVersion(scheme.parseVersion(version));
+                return result;
+            } catch (InvalidVersionSpecificationException e) {
+                throw new VersionRangeResolutionException(new VersionRangeResult(request));
+            }
+        });
+        return locator.getService(RepositorySystem.class);
+    }
+
+    public static DefaultRepositorySystemSession session(RepositorySystem system, File local) {
+        DefaultRepositorySystemSession session = new DefaultRepositorySystemSession();
+        session.setLocalRepositoryManager(
+            system.newLocalRepositoryManager(session, new LocalRepository(local)));
+        return session;
+    }
+}
@@ -0,0 +1,103 @@
+package org.ensime.maven.plugins.ensime;
+
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class VersionCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private Supplier<Optional<String>> lookup(String version) {
+        return () -> {
+            lookups.incrementAndGet();
+            return Optional.of(version);
+        };
+    }
+
+    @Test
+    public void testDynamicVersions() {
+        assertTrue(VersionCache.isDynamic("[1.0,2.0)"));
+        assertTrue(VersionCache.isDynamic("(,1.0]"));
+        assertTrue(VersionCache.isDynamic("1.0-SNAPSHOT"));
+        assertFalse(VersionCache.isDynamic("1.0"));
+        assertFalse(VersionCache.isDynamic(null));
+    }
+
+    @Test
+    public void testLookedUpOncePerRun() {
+        VersionCache cache = VersionCache.inMemory();
+        assertEquals(Optional.of("1.5"), cache.get("a:a:[1,2)", lookup("1.5")));
+        assertEquals(Optional.of("1.5"), cache.get("a:a:[1,2)", lookup("1.6")));
+        assertEquals(1, lookups.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testLookupDoesNotHoldUpOtherKeys() throws Exception {
+        VersionCache cache = VersionCache.inMemory();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // "Aa" and "BB" have the same hash code, so they share a map bin
+        Thread slow = new Thread(() -> cache.get("Aa", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Optional.of("1.5");
+        }));
+        slow.start();
+        started.await();
+
+        assertEquals(Optional.of("2.0"), cache.get("BB", lookup("2.0")));
+
+        release.countDown();
+        slow.join();
+        assertEquals(Optional.of("1.5"), cache.get("Aa", lookup("1.6")));
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    public void testReusedWithinInterval() throws Exception {
+        File file = new File(tmp.getRoot(), "versions.properties");
+        VersionCache first = VersionCache.load(file, 60);
+        first.get("a:a:[1,2)", lookup("1.5"));
+        first.save();
+
+        assertEquals(Optional.of("1.5"), VersionCache.load(file, 60).get("a:a:[1,2)", lookup("1.6")));
+        assertEquals(1, lookups.get());
+
+        assertEquals(Optional.of("1.6"), VersionCache.load(file, 0).get("a:a:[1,2)", lookup("1.6")));
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public void testExpiredVersionsAreLookedUp() throws Exception {
+        File file = new File(tmp.getRoot(), "versions.properties");
+        long dayAgo = System.currentTimeMillis() - 24 * 60 * 60 * 1000L;
+        Files.write(file.toPath(), Collections.singletonList(
+            "a\\:a\\:1.0-SNAPSHOT=" + dayAgo + " 1.0-20160101.000000-1"), StandardCharsets.ISO_8859_1);
+
+        VersionCache cache = VersionCache.load(file, 60);
+        assertEquals(Optional.of("1.0-20160102.000000-2"),
+                     cache.get("a:a:1.0-SNAPSHOT", lookup("1.0-20160102.000000-2")));
+        assertEquals(1, lookups.get());
+    }
+}
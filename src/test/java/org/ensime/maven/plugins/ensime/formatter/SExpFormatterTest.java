@@ -0,0 +1,46 @@
+package org.ensime.maven.plugins.ensime.formatter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+import org.ensime.maven.plugins.ensime.formatter.SExpFormatter.Sections;
+
+import static java.util.stream.Collectors.joining;
+import static org.junit.Assert.assertEquals;
+
+public class SExpFormatterTest {
+
+    @Test
+    public void testParallelRenderingKeepsSortedOrder() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            names.add("module-" + i);
+        }
+        Collections.shuffle(names);
+
+        String sequential = names.stream().sorted()
+            .map(n -> "(:name \"" + n + "\")")
+            .collect(joining(" ", "(", ")"));
+
+        assertEquals(sequential, SExpFormatter.sortedToSExp(
+            names, Comparator.naturalOrder(), n -> "(:name \"" + n + "\")"));
+    }
+
+    @Test
+    public void testEmptyIsNil() {
+        assertEquals("nil", SExpFormatter.sortedToSExp(
+            new ArrayList<String>(), Comparator.naturalOrder(), n -> n));
+    }
+
+    @Test
+    public void testSectionsFollowServerVersion() {
+        assertEquals(Sections.PROJECTS, Sections.forServerVersion("2.0.0-M4"));
+        assertEquals(Sections.SUBPROJECTS, Sections.forServerVersion("1.0.1"));
+        assertEquals(Sections.ALL, Sections.forServerVersion("latest"));
+        assertEquals(Sections.ALL, Sections.parse("all", "2.0.0"));
+        assertEquals(Sections.SUBPROJECTS, Sections.parse("auto", "1.0.1"));
+    }
+}
@@ -0,0 +1,82 @@
+package org.ensime.maven.plugins.ensime.formatter;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import org.ensime.maven.plugins.ensime.formatter.SExpFormatter.Sections;
+import org.ensime.maven.plugins.ensime.model.EnsimeConfig;
+import org.ensime.maven.plugins.ensime.model.EnsimeModule;
+import org.ensime.maven.plugins.ensime.model.EnsimeProject;
+import org.ensime.maven.plugins.ensime.model.EnsimeProjectId;
+
+import static org.junit.Assert.assertEquals;
+
+public class SExpStreamWriterTest {
+
+    private static EnsimeConfig config(List<String> names) {
+        Map<String, EnsimeModule> modules = new TreeMap<>();
+        List<EnsimeProject> projects = new ArrayList<>();
+        for (String name : names) {
+            File jar = new File("/repo/" + name + ".jar");
+            modules.put(name, new EnsimeModule(name,
+                Collections.singleton(new File("/src/" + name)), Collections.emptySet(),
+                Collections.singleton(new File("/target/" + name)), Collections.emptySet(),
+                new HashSet<>(Arrays.asList("core")), Collections.singleton(jar),
+                Collections.emptySet(), Collections.emptySet(),
+                Collections.emptySet(), Collections.emptySet()));
+            projects.add(new EnsimeProject(new EnsimeProjectId(name, "compile"),
+                Collections.singletonList(new EnsimeProjectId("core", "compile")),
+                Collections.singleton(new File("/src/" + name)),
+                Collections.singleton(new File("/target/" + name)),
+                Arrays.asList("-feature"), Collections.emptyList(),
+                Collections.singleton(jar), Collections.emptySet(), Collections.emptySet()));
+        }
+        return new EnsimeConfig(new File("/root"), new File("/root/.ensime_cache"),
+            Collections.singleton(new File("/repo/scala-library.jar")), Collections.emptySet(),
+            "2.0.0", "root", "2.11.8", Arrays.asList("-deprecation"), modules,
+            new File("/jdk"), Collections.emptyList(), Collections.emptyList(),
+            Collections.emptySet(), projects);
+    }
+
+    private static String streamed(EnsimeConfig config, Sections sections) throws Exception {
+        StringWriter out = new StringWriter();
+        try (SExpStreamWriter writer = new SExpStreamWriter(out, config, sections)) {
+            for (EnsimeModule module : config.getModules().values()) {
+                writer.module(module);
+            }
+            // projects may arrive in any order
+            List<EnsimeProject> projects = new ArrayList<>(config.getProjects());
+            Collections.reverse(projects);
+            for (EnsimeProject project : projects) {
+                writer.project(project);
+            }
+        }
+        return out.toString();
+    }
+
+    @Test
+    public void testSameOutputAsFormatter() throws Exception {
+        EnsimeConfig config = config(Arrays.asList("web", "core", "api", "a-b", "a"));
+        for (Sections sections : Sections.values()) {
+            assertEquals(sections.toString(),
+                SExpFormatter.toSExp(config, sections) + "\n", streamed(config, sections));
+        }
+    }
+
+    @Test
+    public void testNoModules() throws Exception {
+        EnsimeConfig config = config(Collections.emptyList());
+        for (Sections sections : Sections.values()) {
+            assertEquals(sections.toString(),
+                SExpFormatter.toSExp(config, sections) + "\n", streamed(config, sections));
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.ensime.maven.plugins.ensime.jfr;
+
+
+import org.junit.Test;
+import static org.junit.Assert.assertTrue;
+
+
+public class FlightTest {
+
+    @Test
+    public void testEventsAreCompiledIn() {
+        assertTrue("JfrRecorder was not found", Flight.isAvailable());
+        Flight.begin(Flight.RESOLVE, "a:a:1", "core").end("hit", 0);
+    }
+}
@@ -0,0 +1,94 @@
+package org.ensime.maven.plugins.ensime.model;
+
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class FileSetTest {
+
+    private static Set<File> files(String... paths) {
+        Set<File> files = new HashSet<>();
+        Arrays.stream(paths).forEach(p -> files.add(new File(p)));
+        return files;
+    }
+
+    @Test
+    public void testBehavesLikeASet() {
+        Set<File> plain = files("/m2/a.jar", "/m2/b.jar", "/m2/a.jar");
+        FileSet set = FileSet.of(plain);
+
+        assertEquals(2, set.size());
+        assertTrue(set.contains(new File("/m2/a.jar")));
+        assertFalse(set.contains(new File("/m2/c.jar")));
+        assertFalse(set.contains("/m2/a.jar"));
+        assertEquals(plain, set);
+        assertEquals(set, plain);
+        assertEquals(plain.hashCode(), set.hashCode());
+    }
+
+    @Test
+    public void testIdenticalSetsOfATableAreShared() {
+        PathTable table = new PathTable();
+        FileSet first = FileSet.of(table, files("/m2/shared-1.jar", "/m2/shared-2.jar"));
+        FileSet second = FileSet.of(table, files("/m2/shared-2.jar", "/m2/shared-1.jar"));
+
+        assertSame(first, second);
+        assertSame(first, FileSet.of(first));
+        assertSame(FileSet.EMPTY, FileSet.of(table, new HashSet<>()));
+
+        // another generation's table does not keep this one's sets alive
+        FileSet other = FileSet.of(new PathTable(), first);
+        assertNotSame(first, other);
+        assertEquals(first, other);
+    }
+
+    @Test
+    public void testOverlappingSetsShareSegments() {
+        PathTable table = new PathTable();
+        Set<File> common = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            common.add(new File("/m2/common-" + i + ".jar"));
+        }
+        FileSet core = FileSet.of(table, common);
+        common.add(new File("/m2/web.jar"));
+        FileSet web = FileSet.of(table, common);
+
+        assertEquals(200, core.size());
+        assertEquals(201, web.size());
+        assertTrue(web.containsAll(core));
+        assertFalse(core.contains(new File("/m2/web.jar")));
+        assertEquals(common, web);
+
+        Segment[] shared = core.segments();
+        Segment[] extended = web.segments();
+        assertEquals(4, shared.length);
+        for (int i = 0; i < 3; i++) {
+            assertSame(shared[i], extended[i]);
+        }
+        assertNotSame(shared[3], extended[3]);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testIsImmutable() {
+        FileSet.of(files("/m2/a.jar")).add(new File("/m2/b.jar"));
+    }
+
+    @Test
+    public void testPathsAreInterned() {
+        PathTable table = new PathTable();
+        int id = table.intern(new File("/m2/a.jar"));
+
+        assertEquals(id, table.intern(new File("/m2/a.jar")));
+        assertEquals(-1, table.indexOf(new File("/m2/b.jar")));
+        assertEquals(1, table.size());
+    }
+}